@@ -0,0 +1,482 @@
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A skeletal implementation of Map2D over an abstract pixel storage.
+ * Sub-classes only provide the storage (allocate, get, put) - the dimensions, bounds checks,
+ * shape drawing, set operations and (generic) algorithms are all implemented here on top of it.
+ * Implementations with a faster native layout (e.g. Map over a flat int[]) override the hot methods.
+ * Pixel (x,y) is always addressed with 0<=x<w and 0<=y<h, the data is row-major (arr[y][x]).
+ */
+public abstract class AbstractMap2D implements Map2D, Serializable {
+
+    protected int w; // width of the map (x range)
+    protected int h; // height of the map (y range)
+
+    ////////////////////// Storage (to be implemented) ///////////////////////
+    /**
+     * (Re)allocates the storage for a w*h map with all the pixels set to v, and updates w,h.
+     * @param w the width of the map.
+     * @param h the height of the map.
+     * @param v the init value of all the pixels.
+     */
+    protected abstract void allocate(int w, int h, int v);
+
+    /**
+     * @return the value of pixel (x,y) - no bounds check, (x,y) is assumed to be inside.
+     */
+    protected abstract int get(int x, int y);
+
+    /**
+     * Sets pixel (x,y) to v - no bounds check, (x,y) is assumed to be inside.
+     */
+    protected abstract void put(int x, int y, int v);
+
+    ////////////////////// Basic ///////////////////////
+    @Override
+    public void init(int w, int h, int v) {
+        if (w <= 0 || h <= 0)
+        {
+            throw new IllegalArgumentException("w and h must be positive");
+        }
+        allocate(w, h, v);
+    }
+
+    @Override
+    public void init(int[][] arr) {
+        int rowLength = checkArray(arr);
+        allocate(rowLength, arr.length, 0);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                put(x, y, arr[y][x]); // deep copy
+            }
+        }
+    }
+
+    @Override
+    public int[][] getMap() { // return a deep copy, row-major
+        int[][] ans = new int[h][w];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                ans[y][x] = get(x, y);
+            }
+        }
+        return ans;
+    }
+
+    @Override
+    public int getWidth()
+    {
+        return this.w;
+    }
+
+    @Override
+    public int getHeight()
+    {
+        return this.h;
+    }
+
+    @Override
+    public int getPixel(int x, int y) {
+        checkBounds(x, y);
+        return get(x, y);
+    }
+
+    @Override
+    public int getPixel(Pixel2D p) {
+        return getPixel(p.getX(), p.getY());
+    }
+
+    @Override
+    public void setPixel(int x, int y, int v) {
+        checkBounds(x, y);
+        put(x, y, v);
+    }
+
+    @Override
+    public void setPixel(Pixel2D p, int v) {
+        setPixel(p.getX(), p.getY(), v);
+    }
+
+    @Override
+    public boolean isInside(Pixel2D p) {
+        int x= p.getX();
+        int y= p.getY();
+        return inBounds(x, y);
+    }
+
+    @Override
+    public boolean sameDimensions(Map2D p) {
+        return (p!=null && this.getWidth() == p.getWidth() && this.getHeight() == p.getHeight());
+    }
+
+    ////////////////////// Set operations ///////////////////////
+    @Override
+    public void addMap2D(Map2D p) {
+        if(!sameDimensions(p))
+        {
+            throw new IllegalArgumentException("Maps must have the same dimensions to add");
+        }
+        for (int y = 0; y < h; y++)
+        {
+            for (int x = 0; x < w; x++)
+            {
+                put(x, y, get(x, y) + p.getPixel(x, y)); // add corresponding pixels
+            }
+        }
+    }
+
+    @Override
+    public void mul(double scalar) {
+        for (int y = 0; y < h; y++)
+        {
+            for (int x = 0; x < w; x++)
+            {
+                put(x, y, (int) (get(x, y) * scalar)); // multiply each pixel by scalar and cast to int
+            }
+        }
+    }
+
+    @Override
+    public void rescale(double sx, double sy) {
+        if (sx <= 0 || sy <= 0) throw new IllegalArgumentException("scale factors must be > 0");
+        int newW = Math.max(1, (int) Math.round(w * sx));
+        int newH = Math.max(1, (int) Math.round(h * sy));
+
+        // Nearest neighbor resampling into a temporary array (the storage is re-allocated below)
+        int[] out = new int[newW * newH];
+        for (int ny = 0; ny < newH; ny++) {
+            int oy = Math.min(h - 1, (int) Math.round(ny / sy));
+            for (int nx = 0; nx < newW; nx++) {
+                int ox = Math.min(w - 1, (int) Math.round(nx / sx));
+                out[ny * newW + nx] = get(ox, oy);
+            }
+        }
+        allocate(newW, newH, 0);
+        for (int y = 0; y < newH; y++) {
+            for (int x = 0; x < newW; x++) {
+                put(x, y, out[y * newW + x]);
+            }
+        }
+    }
+
+    ////////////////////// Drawing ///////////////////////
+    @Override
+    public void drawCircle(Pixel2D center, double rad, int color) {
+        // Extract center coordinates and round the radius to the nearest integer
+        int cx = center.getX();
+        int cy = center.getY();
+        int r = (int) Math.round(rad);
+        // Validate radius: A circle cannot have a negative radius
+        if (r < 0) {
+            throw new IllegalArgumentException("Radius must be >= 0");
+        }
+        // Special case: If radius is 0, just draw a single point at the center
+        if (r == 0) {
+            setPixel(cx, cy, color);
+        }
+        // Draw circle using Midpoint Circle Algorithm (Bresenham's)
+        if (r > 0) {
+            int y = 0; // Start at the top of the circle
+            int x = r; // Initial X is the radius
+            int err = 1 - x; // Initial decision parameter (error offset)
+
+            // The loop continues until the 1/8th arc (octant) is complete
+            while (x >= y)
+            {
+                /* * Apply 8-way symmetry:
+                 * A circle is symmetric across 8 octants. By calculating one point (x, y),
+                 * we can determine 7 other mirrored points instantly.
+                 */
+                setPixel(cx + x, cy + y, color);
+                setPixel(cx + y, cy + x, color);
+                setPixel(cx - y, cy + x, color);
+                setPixel(cx - y, cy - x, color);
+                setPixel(cx - x, cy + y, color);
+                setPixel(cx - x, cy - y, color);
+                setPixel(cx + y, cy - x, color);
+                setPixel(cx + x, cy - y, color);
+
+                y++; // Always move one step in the Y direction
+
+                /* * Error Correction:
+                 * Decide whether to stay at the current X or move inward to stay on the arc.
+                 */
+                if (err < 0)
+                {
+                    // If error is negative, the next pixel is inside the ideal circle boundary
+                    err += ((2 * y) + 1);
+                }
+                else
+                {
+                    // If error is positive, we are too far out; move X one step inward
+                    x--;
+                    err += ((2 * (y - x)) + 1);
+                }
+            }
+        }
+    }
+
+    // 1. Calculate absolute differences and step directions
+    // 2. Initialize error term (err = dx + dy) to manage the decision between X and Y steps
+    // 3. Loop until the current coordinates (x0, y0) match the target (x1, y1)
+    // 4. In each step:
+    //    - If 2*err >= dy, move in the X direction
+    //    - If 2*err <= dx, move in the Y direction
+    //    - This ensures the line stays as close as possible to the ideal mathematical path.
+    @Override
+    public void drawLine(Pixel2D p1, Pixel2D p2, int color) {
+        int x1 = p1.getX(), y1 = p1.getY();
+        int x2 = p2.getX(), y2 = p2.getY();
+        int dx = Math.abs(x2 - x1);
+        int sx = x1 < x2 ? 1 : -1; // if x1<x2 then sx=1 else sx=-1
+        int dy = -Math.abs(y2 - y1);
+        int sy = y1 < y2 ? 1 : -1; // if y1<y2 then sy=1 else sy=-1
+        int err = dx + dy;
+        while (true)
+        {
+            setPixel(x1, y1, color);
+            if (x1 == x2 && y1 == y2) // Reached the end point
+                break;
+            int e2 = 2 * err;
+            if (e2 >= dy)
+            {
+                err += dy;
+                x1 += sx;
+            }
+            if (e2 <= dx)
+            {
+                err += dx;
+                y1 += sy;
+            }
+        }
+    }
+
+    @Override
+    public void drawRect(Pixel2D p1, Pixel2D p2, int color) {
+        if (p1 == p2) { // If both points are the same, draw a single pixel
+            setPixel(p1.getX(), p1.getY(), color);
+        } else {
+            int x1 = Math.min(p1.getX(), p2.getX()); // Left x boundary of both points
+            int y1 = Math.min(p1.getY(), p2.getY()); // Top y boundary of both points
+            int x2 = Math.max(p1.getX(), p2.getX()); // Right x boundary of both points
+            int y2 = Math.max(p1.getY(), p2.getY()); // Bottom y boundary of both points
+            for (int x = x1; x <= x2; x++) { // Draw top and bottom edges
+                setPixel(x, y1, color);
+                setPixel(x, y2, color);
+            }
+            for (int y = y1; y <= y2; y++) { // Draw left and right edges
+                setPixel(x1, y, color);
+                setPixel(x2, y, color);
+            }
+        }
+    }
+
+    /**
+     * Two maps are equal if they have the same dimensions and the same pixel values,
+     * regardless of the storage each of them uses.
+     */
+    @Override
+    public boolean equals(Object ob)
+    {
+        if(!(ob instanceof AbstractMap2D))
+        {
+            return false;
+        }
+        AbstractMap2D map = (AbstractMap2D) ob;
+        if(map.w != this.w || map.h != this.h) // check dimensions
+        {
+            return false;
+        }
+        for (int y = 0; y < h; y++)
+        {
+            for (int x = 0; x < w; x++)
+            {
+                if (this.get(x, y) != map.get(x, y)) // compare each pixel value
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int ans = 1; // same formula as Arrays.hashCode over the row-major pixels
+        for (int y = 0; y < h; y++)
+        {
+            for (int x = 0; x < w; x++)
+            {
+                ans = 31 * ans + get(x, y);
+            }
+        }
+        return 31 * (31 * w + h) + ans;
+    }
+
+    ////////////////////// Algorithms (generic) ///////////////////////
+    /**
+     * Generic BFS fill (4-connectivity) over get/put.
+     */
+    @Override
+    public int fill(Pixel2D xy, int new_v, boolean cyclic) {
+        final int W = w, H = h;
+        final int fx = xy.getX(), fy = xy.getY();
+        if (!inBounds(fx, fy)) return 0;
+        final int old = get(fx, fy);
+        if (old == new_v) return 0;
+
+        // Every pixel is enqueued at most once, so a plain array of packed y*W+x indices (the reusable
+        // queue of the thread's BfsWorkspace) is enough; recolored pixels are their own "visited" mark.
+        final int[] q = BfsWorkspace.get().queueFor(W * H);
+        int head = 0, tail = 0;
+        put(fx, fy, new_v);
+        q[tail++] = fy * W + fx;
+        int ans = 1;
+        while (head < tail) {
+            int cur = q[head++];
+            int x = cur % W, y = cur / W;
+            for (int[] d : DIRS4) {
+                int nx = x + d[0], ny = y + d[1];
+                if (cyclic) {
+                    nx = (nx + W) % W;
+                    ny = (ny + H) % H;
+                } else if (nx < 0 || nx >= W || ny < 0 || ny >= H) {
+                    continue;
+                }
+                if (get(nx, ny) == old) {
+                    put(nx, ny, new_v);
+                    ans++;
+                    q[tail++] = ny * W + nx;
+                }
+            }
+        }
+        return ans;
+    }
+
+    /**
+     * Generic BFS shortest path (8-connectivity, like Map) over get.
+     */
+    @Override
+    public Pixel2D[] shortestPath(Pixel2D p1, Pixel2D p2, int obsColor, boolean cyclic) {
+        if (p1 == null || p2 == null) return null;
+        final int W = w, H = h;
+        final int sx = p1.getX(), sy = p1.getY(), ex = p2.getX(), ey = p2.getY();
+        if (!inBounds(sx, sy) || !inBounds(ex, ey)) return null;
+        if (get(sx, sy) == obsColor || get(ex, ey) == obsColor) return null;
+        if (sx == ex && sy == ey) return new Pixel2D[]{p1};
+
+        final int start = sy * W + sx, goal = ey * W + ex;
+        final BfsWorkspace ws = BfsWorkspace.get(); // reusable queue, parents and (stamped) visited marks
+        ws.begin(W * H);
+        final int[] parent = ws.parent, q = ws.queue;
+        int head = 0, tail = 0;
+        ws.visit(start);
+        q[tail++] = start;
+        boolean found = false;
+        while (head < tail && !found) {
+            int cur = q[head++];
+            int x = cur % W, y = cur / W;
+            for (int[] d : DIRS8) {
+                int nx = x + d[0], ny = y + d[1];
+                if (cyclic) {
+                    nx = (nx + W) % W;
+                    ny = (ny + H) % H;
+                } else if (nx < 0 || nx >= W || ny < 0 || ny >= H) {
+                    continue;
+                }
+                int ni = ny * W + nx;
+                if (!ws.visited(ni) && get(nx, ny) != obsColor) {
+                    ws.visit(ni);
+                    parent[ni] = cur;
+                    if (ni == goal) {
+                        found = true;
+                        break;
+                    }
+                    q[tail++] = ni;
+                }
+            }
+        }
+        return found ? GridBfs.buildPath(parent, start, goal, W) : null;
+    }
+
+    /**
+     * Generic BFS distance map (4-connectivity, like Map) over get.
+     * The result is always an int based Map, as distances do not fit narrow storage.
+     */
+    @Override
+    public Map2D allDistance(Pixel2D start, int obsColor, boolean cyclic) {
+        final int W = w, H = h;
+        final int sx = start.getX(), sy = start.getY();
+        final int[] distance = new int[W * H];
+        Arrays.fill(distance, -1);
+        if (!inBounds(sx, sy)) return new Map(W, H, distance);
+        for (int y = 0; y < H; y++) {
+            for (int x = 0; x < W; x++) {
+                if (get(x, y) == obsColor) distance[y * W + x] = obsColor; // mark obstacles
+            }
+        }
+        if (get(sx, sy) == obsColor) return new Map(W, H, distance);
+
+        // The distance array is its own visited mark: a non obstacle pixel is visited iff its distance != -1
+        final int[] q = BfsWorkspace.get().queueFor(W * H);
+        int head = 0, tail = 0;
+        distance[sy * W + sx] = 0;
+        q[tail++] = sy * W + sx;
+        while (head < tail) {
+            int cur = q[head++];
+            int x = cur % W, y = cur / W;
+            for (int[] d : DIRS4) {
+                int nx = x + d[0], ny = y + d[1];
+                if (cyclic) {
+                    nx = (nx + W) % W;
+                    ny = (ny + H) % H;
+                } else if (nx < 0 || nx >= W || ny < 0 || ny >= H) {
+                    continue;
+                }
+                int ni = ny * W + nx;
+                if (get(nx, ny) == obsColor || distance[ni] != -1) continue;
+                distance[ni] = distance[cur] + 1;
+                q[tail++] = ni;
+            }
+        }
+        return new Map(W, H, distance);
+    }
+
+    ////////////////////// Protected Methods /////////////////////////
+    protected static final int[][] DIRS4 = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}}; // Right, Left, Down, Up
+    protected static final int[][] DIRS8 = {{ 1,  0}, {-1,  0}, { 0,  1}, { 0, -1}, { 1,  1}, { 1, -1}, {-1,  1}, {-1, -1}};
+
+    /**
+     * Validates a 2D init array.
+     * @return the row length (width) of arr.
+     * @throws IllegalArgumentException if arr is null, empty or ragged.
+     */
+    protected static int checkArray(int[][] arr)
+    {
+        if(arr==null || arr.length==0 || arr[0] == null || arr[0].length==0)
+        {
+            throw new IllegalArgumentException("arr can't be null or empty");
+        }
+        int rowLength = arr[0].length;
+        for (int i = 1; i < arr.length; i++) {
+            if(arr[i] == null || arr[i].length != rowLength)
+            {
+                throw new IllegalArgumentException("arr must be a non-ragged 2D array");
+            }
+        }
+        return rowLength;
+    }
+    protected boolean inBounds(int x, int y) // check if (x,y) is within bounds
+    {
+        return (x >= 0 && x < w && y >= 0 && y < h);
+    }
+    protected void checkBounds(int x, int y) // throw exception if (x,y) is out of bounds
+    {
+        if (!inBounds(x, y))
+        {
+            throw new IndexOutOfBoundsException("Out of bounds: (" + x + "," + y + ") for " + w + "x" + h);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+import java.util.Arrays;
+
+/**
+ * Reusable scratch memory for the grid BFS algorithms (see GridBfs), one per thread.
+ * Instead of allocating (and clearing) visited / parent matrices on every call, a search starts
+ * a new "generation": a pixel is visited iff its stamp equals the current generation, so nothing
+ * has to be cleared between calls. The arrays only grow, and are kept for the next search.
+ */
+public final class BfsWorkspace {
+
+    private static final ThreadLocal<BfsWorkspace> LOCAL = ThreadLocal.withInitial(BfsWorkspace::new);
+
+    int[] queue = new int[0]; // packed y*w+x indices (BFS queue or scanline stack)
+    int[] parent = new int[0]; // parent index of each visited pixel (valid iff visited)
+    int[] cost = new int[0]; // best known distance from the start of each visited pixel (valid iff visited)
+    byte[] move = new byte[0]; // the direction each visited pixel was reached from (jump point search)
+    int[] rest = new int[0]; // the unvisited pixels of a direction-optimizing BFS (see DirectionOptimizingBfs)
+    int[][] buckets = {new int[0], new int[0], new int[0]}; // priority buckets of the A* / Dial searches (stacks of indices)
+    int[] bucketSize = new int[3]; // the entries of each bucket of a Dial search (all 0 between searches)
+    long[] bucketUsed = new long[1]; // bit k: bucket k of a Dial search is not empty (all 0 between searches)
+    final IndexHeap heap = new IndexHeap(); // the priority queue of the best first searches
+    private int[] stamp = new int[0]; // stamp[i] == generation iff pixel i was visited
+    private int generation; // the last stamp in use
+    private int current; // the first stamp of the current search (its sides are current..generation)
+
+    private BfsWorkspace() {}
+
+    /**
+     * @return the workspace of the current thread.
+     */
+    public static BfsWorkspace get()
+    {
+        return LOCAL.get();
+    }
+
+    /**
+     * Drops the workspace of the current thread (e.g. after a search over a huge map),
+     * a new (empty) one is created on the next use.
+     */
+    public static void release()
+    {
+        LOCAL.remove();
+    }
+
+    /**
+     * Starts a new search over (at most) size pixels: makes sure the arrays are large enough
+     * and moves to a new generation, so no pixel is visited.
+     * @param size the number of pixels (w*h).
+     */
+    void begin(int size)
+    {
+        begin(size, 1);
+    }
+
+    /**
+     * Starts a new search with several sides (e.g. the forward and backward searches of a
+     * bidirectional BFS): each side gets its own stamp, so a pixel is visited by at most one side.
+     * @param size the number of pixels (w*h).
+     * @param sides the number of sides (1 for a plain search).
+     */
+    void begin(int size, int sides)
+    {
+        if (stamp.length < size)
+        {
+            stamp = new int[size];
+            parent = new int[size];
+            cost = new int[size];
+            move = new byte[size];
+            generation = 0;
+        }
+        queueFor(size);
+        if (generation > Integer.MAX_VALUE - 2 * sides) // about to wrap around: clear the old stamps (rare)
+        {
+            Arrays.fill(stamp, 0);
+            generation = 0;
+        }
+        generation += sides;
+        current = generation - sides + 1;
+    }
+
+    /**
+     * @return true iff pixel i was visited in the current search (by any side).
+     */
+    boolean visited(int i)
+    {
+        return stamp[i] >= current && stamp[i] <= generation;
+    }
+
+    /**
+     * Marks pixel i as visited in the current search.
+     */
+    void visit(int i)
+    {
+        stamp[i] = current;
+    }
+
+    /**
+     * Marks pixel i as visited by the given side (0 based) of the current search.
+     */
+    void visit(int i, int side)
+    {
+        stamp[i] = current + side;
+    }
+
+    /**
+     * @return the side (0 based) which visited pixel i in the current search, or -1 if it was not visited.
+     */
+    int sideOf(int i)
+    {
+        int s = stamp[i] - current;
+        return s >= 0 && s <= generation - current ? s : -1;
+    }
+
+    /**
+     * @return a queue of (at least) size entries - for searches which need no visited marks.
+     */
+    int[] queueFor(int size)
+    {
+        if (queue.length < size)
+        {
+            queue = new int[size];
+        }
+        return queue;
+    }
+
+    /**
+     * @return the unvisited pixel list (at least size entries) of a direction-optimizing BFS.
+     */
+    int[] restFor(int size)
+    {
+        if (rest.length < size)
+        {
+            rest = new int[size];
+        }
+        return rest;
+    }
+
+    /**
+     * Makes sure there are (at least) count buckets and bucket sizes (the new ones empty).
+     */
+    void bucketsFor(int count)
+    {
+        if (buckets.length < count)
+        {
+            int old = buckets.length;
+            buckets = Arrays.copyOf(buckets, count);
+            Arrays.fill(buckets, old, count, new int[0]);
+        }
+        if (bucketSize.length < count)
+        {
+            bucketSize = Arrays.copyOf(bucketSize, count);
+        }
+        if (bucketUsed.length << 6 < count)
+        {
+            bucketUsed = Arrays.copyOf(bucketUsed, (count + 63) >>> 6);
+        }
+    }
+
+    /**
+     * Grows bucket k (keeping its first size entries).
+     */
+    int[] growBucket(int k, int size)
+    {
+        buckets[k] = Arrays.copyOf(buckets[k], Math.max(16, size * 2));
+        return buckets[k];
+    }
+
+    /**
+     * Grows the queue (keeping its first size entries) - used by searches which may push a pixel more than once.
+     */
+    int[] growQueue(int size)
+    {
+        queue = Arrays.copyOf(queue, Math.max(16, size * 2));
+        return queue;
+    }
+}
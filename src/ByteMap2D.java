@@ -0,0 +1,36 @@
+/**
+ * A Map2D which stores each pixel in a single byte (values in [-128,127]),
+ * a quarter of the memory of Map - enough for the GUI palette and most maze maps.
+ * If a value outside the byte range is written (setPixel, addMap2D, mul, draw...), the storage is widened
+ * to short[] (or to int[] for a value beyond the short range) and the map keeps working with the same values
+ * (see NarrowMap2D).
+ */
+public class ByteMap2D extends NarrowMap2D {
+
+    /**
+     * Constructs a w*h map with an init value v.
+     */
+    public ByteMap2D(int w, int h, int v)
+    {
+        super(1);
+        init(w, h, v);
+    }
+
+    /**
+     * Constructs a map from a given 2D (row-major) array.
+     */
+    public ByteMap2D(int[][] data)
+    {
+        super(1);
+        init(data);
+    }
+
+    /**
+     * @param v a pixel value.
+     * @return true iff v can be stored in a byte.
+     */
+    public static boolean fits(int v)
+    {
+        return v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE;
+    }
+}
@@ -0,0 +1,129 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Connected component labeling of a flat row-major int[] map of w*h pixels (see Map.labelComponents):
+ * a component is a maximal 4- or 8-connected region of pixels of the same value (the region Map.fill would
+ * recolor, for 4-connectivity), and every pixel gets the label of its component in a single pass.
+ * Union-find over the pixel indices, in three steps:
+ * 1. The map is cut into bands of BAND rows, and the bands are labeled concurrently on a ForkJoinPool, each one
+ *    only joining pixels of its own band (so the bands write disjoint parts of the forest).
+ * 2. The boundary merge: the first row of every band is joined with the last row of the band above
+ *    (and, when cyclic, the top row with the bottom row).
+ * 3. The labels: a union always links the larger root under the smaller one, so every parent index is at most
+ *    the pixel's own index and each root is the first pixel of its component - one scan in index order turns
+ *    the forest into labels 0..count-1, in the order of the components' first pixels (the same labels however
+ *    the map was cut).
+ */
+public final class ComponentLabeler {
+
+    private static final int BAND = 64; // the rows of a band
+
+    private ComponentLabeler() {} // static methods only
+
+    /**
+     * Labels the components of the map on the given pool.
+     * @param connectivity 4 or 8.
+     * @return the labels and the number of components.
+     */
+    public static Components label(int[] v, int w, int h, boolean cyclic, int connectivity, ForkJoinPool pool)
+    {
+        final int[] labels = new int[w * h];
+        int count = label(v, w, h, cyclic, connectivity, pool, labels);
+        return new Components(new Map(w, h, labels), count);
+    }
+
+    /**
+     * Labels the components of the map on the given pool into labels (w*h entries, used as the forest).
+     * @return the number of components.
+     */
+    static int label(int[] v, int w, int h, boolean cyclic, int connectivity, ForkJoinPool pool, int[] labels)
+    {
+        if (connectivity != 4 && connectivity != 8)
+        {
+            throw new IllegalArgumentException("connectivity must be 4 or 8, got " + connectivity);
+        }
+        final boolean diagonal = connectivity == 8;
+        final int[] parent = labels;
+        final int bands = (h + BAND - 1) / BAND;
+        ParallelRange.run(pool, bands, 1, (b0, b1) -> {
+            for (int b = b0; b < b1; b++)
+            {
+                band(v, parent, w, b * BAND, Math.min(h, (b + 1) * BAND), cyclic, diagonal);
+            }
+        });
+        for (int b = 1; b < bands; b++)
+        {
+            join(v, parent, w, b * BAND, b * BAND - 1, cyclic, diagonal);
+        }
+        if (cyclic && h > 1)
+        {
+            join(v, parent, w, 0, h - 1, cyclic, diagonal);
+        }
+
+        int count = 0;
+        for (int i = 0; i < w * h; i++) // parent[i] < i is already a label
+        {
+            parent[i] = parent[i] == i ? count++ : parent[parent[i]];
+        }
+        return count;
+    }
+
+    /**
+     * Step 1 over the rows [y0,y1): each row joins its equal neighbors in the row and in the row above.
+     */
+    private static void band(int[] v, int[] parent, int w, int y0, int y1, boolean cyclic, boolean diagonal)
+    {
+        for (int y = y0; y < y1; y++)
+        {
+            final int row = y * w;
+            parent[row] = row;
+            for (int i = row + 1; i < row + w; i++)
+            {
+                parent[i] = i;
+                if (v[i] == v[i - 1]) union(parent, i - 1, i);
+            }
+            if (cyclic && w > 1 && v[row] == v[row + w - 1]) union(parent, row, row + w - 1);
+            if (y > y0) join(v, parent, w, y, y - 1, cyclic, diagonal);
+        }
+    }
+
+    /**
+     * Joins every pixel of row y with its equal neighbors in row up (the row above it, cyclically):
+     * the one straight above, and the two diagonal ones if diagonal.
+     */
+    private static void join(int[] v, int[] parent, int w, int y, int up, boolean cyclic, boolean diagonal)
+    {
+        final int row = y * w, above = up * w;
+        for (int x = 0; x < w; x++)
+        {
+            int i = row + x, c = v[i];
+            if (v[above + x] == c) union(parent, i, above + x);
+            if (!diagonal) continue;
+            int left = x > 0 ? x - 1 : cyclic ? w - 1 : -1, right = x < w - 1 ? x + 1 : cyclic ? 0 : -1;
+            if (left >= 0 && v[above + left] == c) union(parent, i, above + left);
+            if (right >= 0 && v[above + right] == c) union(parent, i, above + right);
+        }
+    }
+
+    /**
+     * Joins the sets of a and b: the larger root goes under the smaller one.
+     */
+    private static void union(int[] parent, int a, int b)
+    {
+        int ra = find(parent, a), rb = find(parent, b);
+        if (ra < rb) parent[rb] = ra;
+        else if (rb < ra) parent[ra] = rb;
+    }
+
+    /**
+     * @return the root of i's set (halving the path on the way).
+     */
+    private static int find(int[] parent, int i)
+    {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * The connected components of a map (see Map.labelComponents): a label map, where every pixel holds the
+ * label of its component (0..count-1, in the order of the components' first pixels, row by row), and the
+ * number of components.
+ */
+public final class Components {
+
+    private final Map2D labels;
+    private final int count;
+
+    Components(Map2D labels, int count)
+    {
+        this.labels = labels;
+        this.count = count;
+    }
+
+    /**
+     * @return the map of the component labels.
+     */
+    public Map2D getLabels()
+    {
+        return labels;
+    }
+
+    /**
+     * @return the number of components.
+     */
+    public int getCount()
+    {
+        return count;
+    }
+}
@@ -0,0 +1,568 @@
+import java.util.Arrays;
+
+/**
+ * The corridor graph of a flat row-major int[] map of w*h pixels, for Map.shortestPath with PathEngine.CORRIDOR:
+ * the free pixels (8-connectivity, avoiding obsColor) contracted into a graph of junctions and dead ends.
+ * 1. Corners: a free pixel whose only two free neighbors are neighbors of each other (the bend of a corridor) is
+ *    never inside a shortest path - the diagonal step between its neighbors is shorter. These pixels are left out
+ *    of the graph (but for those next to another such pixel, so that their neighbors stay), which keeps every
+ *    distance between the other pixels; a corner is only ever an end of a path, one step from either neighbor.
+ * 2. Without the corners, a pixel with exactly two neighbors is a corridor pixel; the other pixels are the nodes,
+ *    and each chain of corridor pixels between two nodes becomes one edge weighted by its number of steps.
+ *    A closed loop of corridor pixels without any node gets one of its pixels promoted to a node.
+ * Contracting the chains keeps every distance, so a search over the graph is exact - on maze-like maps, whose
+ * corridors are one pixel wide, the graph is much smaller than the map.
+ * A query walks from p1 and p2 along their corridors to the nodes at both ends, runs A* (octile heuristic) over
+ * the nodes, and walks the corridors of the edges again to expand the path into pixels. Besides the graph only the
+ * corners are stored (a bit per pixel): an edge keeps its length and the direction it leaves each of its nodes in.
+ * It is only valid as long as the map does not change (Map rebuilds it after any change).
+ */
+public final class CorridorGraph {
+
+    private static final byte CORRIDOR = 1, NODE = 2, WALKED = 4, BEND = 8; // the build's pixel kinds (and marks)
+
+    private final int w, h, obsColor;
+    private final boolean cyclic;
+    private final long[] corners; // bit i: pixel i is a corner, left out of the graph
+    private int[] nodes; // the node pixels (packed y*w+x indices), sorted: node k is nodes[k]
+    private int[] loops; // the pixels promoted to nodes on loops of corridor pixels, sorted
+    private int[] adjStart, adj; // the edges of node k are adj[adjStart[k]..adjStart[k+1])
+    private int[] edgeA, edgeB, length; // the nodes and the number of steps of each edge
+    private byte[] dirA, dirB; // the direction (see GridBfs.DX / DY) each edge leaves its nodes in
+
+    private CorridorGraph(int w, int h, int obsColor, boolean cyclic)
+    {
+        this.w = w;
+        this.h = h;
+        this.obsColor = obsColor;
+        this.cyclic = cyclic;
+        this.corners = new long[(int) (((long) w * h + 63) >>> 6)];
+    }
+
+    /**
+     * Contracts the corridors of a map in O(w*h).
+     */
+    public static CorridorGraph build(int[] v, int w, int h, int obsColor, boolean cyclic)
+    {
+        final CorridorGraph g = new CorridorGraph(w, h, obsColor, cyclic);
+        final int n = w * h;
+        final byte[] kind = new byte[n];
+        final int[] near = new int[8];
+        for (int i = 0; i < n; i++) // the bends: two free neighbors, next to each other
+        {
+            if (v[i] != obsColor && g.neighbors(v, i, near) == 2 && g.adjacent(near[0], near[1])) kind[i] = BEND;
+        }
+        for (int i = 0; i < n; i++) // the corners: the bends whose neighbors are no bends
+        {
+            if (kind[i] != BEND) continue;
+            g.neighbors(v, i, near);
+            if (kind[near[0]] != BEND && kind[near[1]] != BEND) g.corners[i >>> 6] |= 1L << i;
+        }
+        int[] nodeList = new int[16];
+        int count = 0;
+        for (int i = 0; i < n; i++)
+        {
+            kind[i] = 0;
+            if (v[i] == obsColor || g.isCorner(i)) continue;
+            boolean node = g.routes(v, i, near) != 2;
+            kind[i] = node ? NODE : CORRIDOR;
+            if (!node) continue;
+            if (count == nodeList.length) nodeList = Arrays.copyOf(nodeList, count * 2);
+            nodeList[count++] = i;
+        }
+
+        // the edges, from their node pixels: each one is walked from both ends, and kept from one of them
+        final Edges edges = new Edges();
+        for (int k = 0; k < count; k++)
+        {
+            g.walkFrom(v, kind, nodeList[k], edges, near);
+        }
+        int[] loopList = new int[0];
+        int loopCount = 0;
+        for (int i = 0; i < n; i++) // the corridor pixels no walk got to are on loops without a node
+        {
+            if (kind[i] != CORRIDOR) continue;
+            kind[i] = NODE;
+            if (loopCount == loopList.length) loopList = Arrays.copyOf(loopList, Math.max(4, loopCount * 2));
+            loopList[loopCount++] = i;
+            g.walkFrom(v, kind, i, edges, near);
+        }
+        g.loops = Arrays.copyOf(loopList, loopCount);
+        g.nodes = Arrays.copyOf(nodeList, count + loopCount);
+        System.arraycopy(loopList, 0, g.nodes, count, loopCount);
+        Arrays.sort(g.nodes);
+
+        final int m = edges.size;
+        g.edgeA = new int[m];
+        g.edgeB = new int[m];
+        for (int e = 0; e < m; e++)
+        {
+            g.edgeA[e] = Arrays.binarySearch(g.nodes, edges.from[e]);
+            g.edgeB[e] = Arrays.binarySearch(g.nodes, edges.to[e]);
+        }
+        g.length = Arrays.copyOf(edges.length, m);
+        g.dirA = Arrays.copyOf(edges.dirFrom, m);
+        g.dirB = Arrays.copyOf(edges.dirTo, m);
+        g.adjacency();
+        return g;
+    }
+
+    /**
+     * The edges found by the build, with their node pixels.
+     */
+    private static final class Edges {
+        int[] from = new int[16], to = new int[16], length = new int[16];
+        byte[] dirFrom = new byte[16], dirTo = new byte[16];
+        int size;
+
+        void add(int a, int b, int steps, int da, int db)
+        {
+            if (size == from.length)
+            {
+                from = Arrays.copyOf(from, size * 2);
+                to = Arrays.copyOf(to, size * 2);
+                length = Arrays.copyOf(length, size * 2);
+                dirFrom = Arrays.copyOf(dirFrom, size * 2);
+                dirTo = Arrays.copyOf(dirTo, size * 2);
+            }
+            from[size] = a;
+            to[size] = b;
+            length[size] = steps;
+            dirFrom[size] = (byte) da;
+            dirTo[size] = (byte) db;
+            size++;
+        }
+    }
+
+    /**
+     * Walks every corridor which leaves node pixel a, and keeps the edges it leads to (once each: from the
+     * smaller node pixel, and on the edges from a pixel to itself - which no shortest path takes - never).
+     */
+    private void walkFrom(int[] v, byte[] kind, int a, Edges edges, int[] near)
+    {
+        for (int d = 0; d < 8; d++)
+        {
+            int prev = a, cur = step(a, d);
+            if (cur < 0 || cur == a || v[cur] == obsColor || isCorner(cur) || repeated(a, d, cur)) continue;
+            int steps = 1;
+            while ((kind[cur] & NODE) == 0) {
+                kind[cur] |= WALKED;
+                int next = other(v, cur, prev, near);
+                prev = cur;
+                cur = next;
+                steps++;
+            }
+            if (cur > a) edges.add(a, cur, steps, d, direction(cur, prev)); // else kept from the other end
+        }
+        kind[a] |= WALKED;
+    }
+
+    /**
+     * Builds the edge lists of the nodes.
+     */
+    private void adjacency()
+    {
+        adjStart = new int[nodes.length + 1];
+        for (int e = 0; e < edgeA.length; e++)
+        {
+            adjStart[edgeA[e] + 1]++;
+            adjStart[edgeB[e] + 1]++;
+        }
+        for (int k = 0; k < nodes.length; k++)
+        {
+            adjStart[k + 1] += adjStart[k];
+        }
+        adj = new int[2 * edgeA.length];
+        int[] fill = Arrays.copyOf(adjStart, nodes.length);
+        for (int e = 0; e < edgeA.length; e++)
+        {
+            adj[fill[edgeA[e]]++] = e;
+            adj[fill[edgeB[e]]++] = e;
+        }
+    }
+
+    ////////////////////// Pixels /////////////////////////
+    private int step(int i, int d)
+    {
+        return GridBfs.neighbor(i % w, i / w, GridBfs.DX[d], GridBfs.DY[d], w, h, cyclic);
+    }
+
+    private boolean isCorner(int i)
+    {
+        return (corners[i >>> 6] & 1L << i) != 0;
+    }
+
+    /**
+     * @return true iff direction d is not the first one which leads from pixel a to pixel c (tiny cyclic maps reach
+     * the same neighbor in several directions).
+     */
+    private boolean repeated(int a, int d, int c)
+    {
+        if (!cyclic || (w >= 3 && h >= 3)) return false; // the neighbors are distinct
+        for (int e = 0; e < d; e++)
+        {
+            if (step(a, e) == c) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the (first) direction which leads from pixel a to its neighbor c.
+     */
+    private int direction(int a, int c)
+    {
+        int d = 0;
+        while (step(a, d) != c) d++;
+        return d;
+    }
+
+    /**
+     * @return true iff pixels a and b are distinct neighbors.
+     */
+    private boolean adjacent(int a, int b)
+    {
+        if (a == b) return false;
+        for (int d = 0; d < 8; d++)
+        {
+            if (step(a, d) == b) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Collects the distinct free neighbors of pixel i (not i itself) into near.
+     * @return their number.
+     */
+    private int neighbors(int[] v, int i, int[] near)
+    {
+        final boolean tiny = cyclic && (w < 3 || h < 3); // the only maps where two directions reach the same pixel
+        final int x = i % w, y = i / w;
+        int k = 0;
+        for (int d = 0; d < 8; d++)
+        {
+            int ni = GridBfs.neighbor(x, y, GridBfs.DX[d], GridBfs.DY[d], w, h, cyclic);
+            if (ni < 0 || v[ni] == obsColor) continue;
+            if (tiny)
+            {
+                boolean seen = ni == i;
+                for (int j = 0; j < k && !seen; j++)
+                {
+                    seen = near[j] == ni;
+                }
+                if (seen) continue;
+            }
+            near[k++] = ni;
+        }
+        return k;
+    }
+
+    /**
+     * Collects the neighbors of pixel i in the graph (its free neighbors but the corners) into near.
+     * @return their number.
+     */
+    private int routes(int[] v, int i, int[] near)
+    {
+        int n = neighbors(v, i, near), k = 0;
+        for (int j = 0; j < n; j++)
+        {
+            if (!isCorner(near[j])) near[k++] = near[j];
+        }
+        return k;
+    }
+
+    /**
+     * @return the neighbor of corridor pixel cur (in the graph) which is not prev.
+     */
+    private int other(int[] v, int cur, int prev, int[] near)
+    {
+        routes(v, cur, near);
+        return near[0] == prev ? near[1] : near[0];
+    }
+
+    /**
+     * @return true iff pixel i (free, not a corner) is a node.
+     */
+    private boolean isNode(int[] v, int i, int[] near)
+    {
+        return routes(v, i, near) != 2 || Arrays.binarySearch(loops, i) >= 0;
+    }
+
+    /**
+     * @return true iff this graph was built for a w*h map with these parameters.
+     */
+    public boolean isFor(int w, int h, int obsColor, boolean cyclic)
+    {
+        return this.w == w && this.h == h && this.obsColor == obsColor && this.cyclic == cyclic;
+    }
+
+    /**
+     * @return the number of nodes (junctions, dead ends, open areas and loop pixels).
+     */
+    public int getNodeCount()
+    {
+        return nodes.length;
+    }
+
+    /**
+     * @return the number of edges (the corridors between distinct nodes, and the direct steps between nodes).
+     */
+    public int getEdgeCount()
+    {
+        return edgeA.length;
+    }
+
+    ////////////////////// Search /////////////////////////
+    /**
+     * A walk of a query: the pixels from an end of the path (not a node) to a node, along its corridor.
+     */
+    private static final class Walk {
+        int[] pixels = new int[16]; // the pixels after the end of the path, the last one the node
+        int size;
+        int node; // the node at the end (its index)
+
+        Walk()
+        {
+        }
+
+        Walk(Walk prefix)
+        {
+            pixels = Arrays.copyOf(prefix.pixels, Math.max(16, prefix.size));
+            size = prefix.size;
+        }
+
+        void add(int p)
+        {
+            if (size == pixels.length) pixels = Arrays.copyOf(pixels, size * 2);
+            pixels[size++] = p;
+        }
+
+        /** @return the steps from the end of the path to pixel p of this walk, -1 if it does not pass p. */
+        int stepsTo(int p)
+        {
+            for (int k = 0; k < size; k++)
+            {
+                if (pixels[k] == p) return k + 1;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Shortest path (8-connectivity, one step per move) avoiding obsColor - the same number of steps as
+     * GridBfs.shortestPath.
+     * @param v the map this graph was built for.
+     * @return the path from p1 to p2 (inclusive), or null if there is none.
+     */
+    public Pixel2D[] shortestPath(int[] v, Pixel2D p1, Pixel2D p2)
+    {
+        if (v.length != w * h)
+        {
+            throw new IllegalArgumentException("the corridor graph was built for another map");
+        }
+        if (p1 == null || p2 == null) return null;
+        final int sx = p1.getX(), sy = p1.getY(), ex = p2.getX(), ey = p2.getY();
+        if (sx < 0 || sx >= w || sy < 0 || sy >= h) return null;
+        if (ex < 0 || ex >= w || ey < 0 || ey >= h) return null;
+        final int start = sy * w + sx, goal = ey * w + ex;
+        if (v[start] == obsColor || v[goal] == obsColor) return null;
+        if (start == goal) return new Pixel2D[]{p1};
+        if (adjacent(start, goal)) return new Pixel2D[]{p1, p2};
+
+        // the start and the goal join the graph at their own node, or at the nodes their corridors lead to
+        final int[] near = new int[8];
+        final int startNode = isCorner(start) ? -1 : Arrays.binarySearch(nodes, start);
+        final int goalNode = isCorner(goal) ? -1 : Arrays.binarySearch(nodes, goal);
+        final Walk[] fromStart = startNode >= 0 ? new Walk[0] : walks(v, start, near);
+        final Walk[] toGoal = goalNode >= 0 ? new Walk[0] : walks(v, goal, near);
+        final int[] entries = isCorner(goal) ? Arrays.copyOf(near, neighbors(v, goal, near)) : new int[]{goal};
+        long best = Long.MAX_VALUE; // the steps of the shortest path found so far
+        int bestVia = -1, bestWalk = -1, bestCopy = 0; // its last node (-1: along a start walk), the walk it ends with
+        for (int k = 0; k < fromStart.length; k++) // the goal on a start walk, or a goal corner next to one
+        {
+            for (int entry : entries)
+            {
+                int steps = fromStart[k].stepsTo(entry);
+                if (steps < 0 || (entry == goal ? steps : steps + 1) >= best) continue;
+                best = entry == goal ? steps : steps + 1;
+                bestWalk = k;
+                bestCopy = entry == goal ? steps - 1 : steps; // the walk's pixels before p2
+            }
+        }
+
+        BfsWorkspace ws = BfsWorkspace.get();
+        ws.begin(nodes.length, 2);
+        final int[] cost = ws.cost, parent = ws.parent, edge = ws.queue; // edge: the edge each node was reached by
+        final IndexHeap open = ws.heap;
+        open.clear();
+        if (startNode >= 0)
+        {
+            relax(ws, startNode, 0, -1, -1, ex, ey);
+        }
+        for (Walk walk : fromStart)
+        {
+            relax(ws, walk.node, walk.size, -1, -1, ex, ey);
+        }
+        while (!open.isEmpty() && open.peekKey() < best) {
+            long key = open.peekKey();
+            int u = open.pop();
+            if (ws.sideOf(u) == 1 || cost[u] + octile(u, ex, ey) != key) continue; // closed, or stale
+            ws.visit(u, 1);
+            if (u == goalNode && cost[u] < best)
+            {
+                best = cost[u];
+                bestVia = u;
+            }
+            for (int k = 0; k < toGoal.length; k++)
+            {
+                if (toGoal[k].node == u && cost[u] + toGoal[k].size < best)
+                {
+                    best = cost[u] + toGoal[k].size;
+                    bestVia = u;
+                    bestWalk = k;
+                }
+            }
+            for (int j = adjStart[u]; j < adjStart[u + 1]; j++)
+            {
+                int e = adj[j], other = edgeA[e] == u ? edgeB[e] : edgeA[e];
+                relax(ws, other, cost[u] + length[e], u, e, ex, ey);
+            }
+        }
+        if (best == Long.MAX_VALUE) return null;
+
+        // expand: p1 + its walk + the edges + the goal's walk backwards + p2
+        final Pixel2D[] ans = new Pixel2D[(int) best + 1];
+        ans[0] = p1;
+        ans[ans.length - 1] = p2;
+        int len = 1;
+        if (bestVia < 0) // along a start walk
+        {
+            Walk walk = fromStart[bestWalk];
+            for (int k = 0; k < bestCopy; k++)
+            {
+                ans[len++] = pixel(walk.pixels[k]);
+            }
+            return ans;
+        }
+        int nodesOnPath = 0;
+        for (int u = bestVia; u >= 0; u = parent[u]) nodesOnPath++;
+        final int[] chain = new int[nodesOnPath];
+        for (int u = bestVia, k = nodesOnPath - 1; k >= 0; k--)
+        {
+            chain[k] = u;
+            u = parent[u];
+        }
+        if (startNode < 0) // the walk to the first node: one that reaches it at its cost
+        {
+            Walk walk = fromStart[0];
+            for (Walk candidate : fromStart)
+            {
+                if (candidate.node == chain[0] && candidate.size == cost[chain[0]]) walk = candidate;
+            }
+            for (int k = 0; k < walk.size; k++)
+            {
+                ans[len++] = pixel(walk.pixels[k]);
+            }
+        }
+        for (int k = 1; k < chain.length; k++)
+        {
+            int e = edge[chain[k]], from = chain[k - 1];
+            int u = nodes[from], d = edgeA[e] == from ? dirA[e] : dirB[e];
+            int prev = u, cur = step(u, d);
+            for (int s = 1; s < length[e]; s++) // the corridor pixels
+            {
+                ans[len++] = pixel(cur);
+                int next = other(v, cur, prev, near);
+                prev = cur;
+                cur = next;
+            }
+            ans[len++] = pixel(cur);
+        }
+        if (goalNode < 0) // the goal's walk, backwards
+        {
+            Walk walk = toGoal[bestWalk];
+            for (int k = walk.size - 2; k >= 0; k--)
+            {
+                ans[len++] = pixel(walk.pixels[k]);
+            }
+        }
+        ans[ans.length - 1] = p2;
+        return ans;
+    }
+
+    /**
+     * @return the walks from pixel p (not a node) to the nodes its corridor leads to: both ways along the corridor,
+     * or, from a corner, both ways from each of its two neighbors (just the neighbor if it is a node).
+     */
+    private Walk[] walks(int[] v, int p, int[] near)
+    {
+        if (!isCorner(p))
+        {
+            return extend(v, p, new Walk(), near);
+        }
+        neighbors(v, p, near);
+        final int a = near[0], b = near[1];
+        Walk toA = new Walk(), toB = new Walk();
+        toA.add(a);
+        toB.add(b);
+        Walk[] fromA = extend(v, a, toA, near), fromB = extend(v, b, toB, near);
+        Walk[] ans = Arrays.copyOf(fromA, fromA.length + fromB.length);
+        System.arraycopy(fromB, 0, ans, fromA.length, fromB.length);
+        return ans;
+    }
+
+    /**
+     * @return the walks which continue prefix (empty, or ending at pixel e) to the nodes: prefix alone if it ends
+     * at a node, else one walk each way along e's corridor.
+     */
+    private Walk[] extend(int[] v, int e, Walk prefix, int[] near)
+    {
+        if (prefix.size > 0 && isNode(v, e, near))
+        {
+            prefix.node = Arrays.binarySearch(nodes, e);
+            return new Walk[]{prefix};
+        }
+        routes(v, e, near);
+        final int first = near[0], second = near[1];
+        Walk[] ans = new Walk[2];
+        for (int k = 0; k < 2; k++)
+        {
+            int prev = e, cur = k == 0 ? first : second;
+            Walk walk = new Walk(prefix);
+            walk.add(cur);
+            while (!isNode(v, cur, near)) {
+                int next = other(v, cur, prev, near);
+                prev = cur;
+                cur = next;
+                walk.add(cur);
+            }
+            walk.node = Arrays.binarySearch(nodes, cur);
+            ans[k] = walk;
+        }
+        return ans;
+    }
+
+    /**
+     * Opens node u at cost g (reached from node from over edge e), unless it is closed or open at a lower cost.
+     */
+    private void relax(BfsWorkspace ws, int u, int g, int from, int e, int ex, int ey)
+    {
+        int side = ws.sideOf(u);
+        if (side == 1 || (side == 0 && ws.cost[u] <= g)) return;
+        ws.visit(u, 0);
+        ws.cost[u] = g;
+        ws.parent[u] = from;
+        ws.queue[u] = e;
+        ws.heap.push(g + octile(u, ex, ey), u);
+    }
+
+    private int octile(int node, int ex, int ey)
+    {
+        int p = nodes[node];
+        return GridBfs.octile(p % w, p / w, ex, ey, w, h, cyclic);
+    }
+
+    private Pixel2D pixel(int i)
+    {
+        return new Index2D(i % w, i / w);
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * The algorithms which Map.allDistance can use - all of them return the same distance map,
+ * they only differ in how they get there.
+ * The engine can be chosen per map (Map.setDistanceEngine) or per call.
+ */
+public enum DistanceEngine {
+    /** BFS with a queue of pixels (the default). */
+    BFS,
+    /** BFS over long[] row bitsets of the walkable mask, a whole frontier word per operation - fastest for wide, horizontal fronts (see BitBfs). */
+    BITSET,
+    /** BFS layer by layer over 64x64 tiles, the frontier tiles of a layer expanded concurrently on the common ForkJoinPool (see ParallelBfs). */
+    PARALLEL,
+    /** BFS which expands each layer top-down (from the frontier) or bottom-up (from the unvisited pixels), whichever is cheaper (see DirectionOptimizingBfs). */
+    DIRECTION_OPTIMIZING
+}
@@ -0,0 +1,339 @@
+import java.util.Arrays;
+
+/**
+ * The distance map of a Map from a fixed source pixel (as Map.allDistance: 4-connectivity, obstacles of
+ * obsColor), kept up to date incrementally while the map changes.
+ * The field listens to the map (see MapListener) and patches, on the next read, only the distances which the
+ * changed pixels affect:
+ * 1. A new obstacle: the pixels which lose every neighbor one step closer to the source are invalidated,
+ *    layer by layer (a pixel still supported by a valid neighbor keeps its distance), and the invalidated
+ *    region is then settled again from its valid border (Dijkstra with unit steps).
+ * 2. A removed obstacle: the pixel gets 1 + its smallest neighbor distance, and the decreases spread out from it (BFS).
+ * Bulk changes (init, fill, mul, addMap2D, rescale) recompute the whole field.
+ * The values always equal the ones allDistance(source, obsColor, cyclic) would return.
+ * close() detaches the field from its map.
+ */
+public final class DistanceField implements MapListener, AutoCloseable {
+
+    private static final int UNREACHED = Integer.MAX_VALUE; // a free pixel with no path from the source
+    private static final int BLOCKED = Integer.MIN_VALUE; // an obstacle
+
+    private final Map map;
+    private final int sourceX, sourceY, obsColor;
+    private final boolean cyclic;
+
+    private int w, h, source;
+    private int[] dist = new int[0]; // the distance of each pixel, or UNREACHED / BLOCKED
+    private int[] pending = new int[16]; // pixels changed since the last update
+    private int pendingSize;
+    private int[] affected = new int[16]; // the pixels invalidated by a new obstacle
+    private boolean restart = true; // the field has to be recomputed from scratch
+    private boolean closed;
+    private long repaired; // the number of pixels whose distance was recomputed by the last update
+
+    /**
+     * Creates the distance field of a map and registers it as a listener of the map.
+     * @param map the map.
+     * @param source the pixel the distances are measured from.
+     * @param obsColor the color of the obstacles.
+     * @param cyclic whether the map wraps around its edges.
+     */
+    public DistanceField(Map map, Pixel2D source, int obsColor, boolean cyclic)
+    {
+        if (map == null || source == null)
+        {
+            throw new IllegalArgumentException("map and source can't be null");
+        }
+        this.map = map;
+        this.sourceX = source.getX();
+        this.sourceY = source.getY();
+        this.obsColor = obsColor;
+        this.cyclic = cyclic;
+        map.addMapListener(this);
+    }
+
+    /**
+     * @return the distance of pixel (x,y) from the source as in allDistance: obsColor for an obstacle and -1
+     * for a pixel which can not be reached.
+     */
+    public int getDistance(int x, int y)
+    {
+        update();
+        if (x < 0 || x >= w || y < 0 || y >= h)
+        {
+            throw new IndexOutOfBoundsException("pixel (" + x + "," + y + ") is out of bounds");
+        }
+        return value(dist[y * w + x]);
+    }
+
+    /**
+     * @return the distance of pixel p from the source (see getDistance(x, y)).
+     */
+    public int getDistance(Pixel2D p)
+    {
+        return getDistance(p.getX(), p.getY());
+    }
+
+    /**
+     * @return a new map of all the distances, equal to allDistance(source, obsColor, cyclic).
+     */
+    public Map2D toMap()
+    {
+        update();
+        int[] ans = new int[w * h];
+        for (int i = 0; i < ans.length; i++)
+        {
+            ans[i] = value(dist[i]);
+        }
+        return new Map(w, h, ans);
+    }
+
+    /**
+     * @return the source pixel.
+     */
+    public Pixel2D getSource()
+    {
+        return new Index2D(sourceX, sourceY);
+    }
+
+    /**
+     * @return the number of pixels whose distance was recomputed by the last update (the cost of the last repair).
+     */
+    public long getRepaired()
+    {
+        return repaired;
+    }
+
+    /**
+     * Detaches the field from its map (it can not be read anymore).
+     */
+    @Override
+    public void close()
+    {
+        if (!closed)
+        {
+            closed = true;
+            map.removeMapListener(this);
+        }
+    }
+
+    @Override
+    public void pixelChanged(Map map, int x, int y, int oldValue, int newValue)
+    {
+        if (restart || (oldValue == obsColor) == (newValue == obsColor)) return; // not an obstacle change
+        if (pendingSize == pending.length)
+        {
+            pending = Arrays.copyOf(pending, pendingSize * 2);
+        }
+        pending[pendingSize++] = y * w + x;
+    }
+
+    @Override
+    public void mapChanged(Map map)
+    {
+        restart = true;
+        pendingSize = 0;
+    }
+
+    private int value(int d)
+    {
+        return d == BLOCKED ? obsColor : d == UNREACHED ? -1 : d;
+    }
+
+    ////////////////////// Updates /////////////////////////
+    /**
+     * Applies the changes of the map since the last update.
+     */
+    private void update()
+    {
+        if (closed)
+        {
+            throw new IllegalStateException("DistanceField was closed");
+        }
+        if (!restart && pendingSize == 0) return;
+        repaired = 0;
+        if (restart)
+        {
+            rebuild();
+            return;
+        }
+        for (int k = 0; k < pendingSize; k++)
+        {
+            int p = pending[k];
+            boolean blocked = map.getPixel(p % w, p / w) == obsColor;
+            if (blocked == (dist[p] == BLOCKED)) continue; // changed back since
+            if (blocked) addObstacle(p);
+            else removeObstacle(p);
+        }
+        pendingSize = 0;
+    }
+
+    /**
+     * Recomputes the whole field with a BFS from the source.
+     */
+    private void rebuild()
+    {
+        restart = false;
+        pendingSize = 0;
+        w = map.getWidth();
+        h = map.getHeight();
+        if (dist.length != w * h)
+        {
+            dist = new int[w * h];
+        }
+        for (int y = 0; y < h; y++)
+        {
+            for (int x = 0; x < w; x++)
+            {
+                dist[y * w + x] = map.getPixel(x, y) == obsColor ? BLOCKED : UNREACHED;
+            }
+        }
+        source = sourceX >= 0 && sourceX < w && sourceY >= 0 && sourceY < h ? sourceY * w + sourceX : -1;
+        if (source >= 0 && dist[source] != BLOCKED)
+        {
+            dist[source] = 0;
+            spread(source);
+        }
+        repaired = dist.length;
+    }
+
+    /**
+     * Pixel p became an obstacle: invalidates the pixels whose every shortest path went through it,
+     * and settles them again.
+     */
+    private void addObstacle(int p)
+    {
+        final int old = dist[p];
+        dist[p] = BLOCKED;
+        repaired++;
+        if (old == UNREACHED) return;
+
+        // 1. Invalidate, in layers of increasing (old) distance - the layer below is decided first
+        BfsWorkspace ws = BfsWorkspace.get();
+        ws.begin(w * h);
+        int[] q = ws.queue;
+        int head = 0, tail = 0, count = 0;
+        for (int d = 0; d < 4; d++)
+        {
+            int n = neighbor(p, d);
+            if (n >= 0 && dist[n] == old + 1) q[tail++] = n;
+        }
+        while (head < tail) {
+            int u = q[head++];
+            if (ws.visited(u)) continue;
+            int du = dist[u];
+            boolean supported = u == source;
+            for (int d = 0; d < 4 && !supported; d++)
+            {
+                int n = neighbor(u, d);
+                supported = n >= 0 && dist[n] == du - 1 && !ws.visited(n);
+            }
+            if (supported) continue;
+            ws.visit(u);
+            if (count == affected.length) affected = Arrays.copyOf(affected, count * 2);
+            affected[count++] = u;
+            for (int d = 0; d < 4; d++)
+            {
+                int n = neighbor(u, d);
+                if (n >= 0 && dist[n] == du + 1 && !ws.visited(n))
+                {
+                    if (tail == q.length) q = ws.growQueue(tail);
+                    q[tail++] = n;
+                }
+            }
+        }
+        repaired += count;
+
+        // 2. Settle the invalidated pixels again, from their valid neighbors (Dijkstra: the seeds differ)
+        for (int k = 0; k < count; k++)
+        {
+            dist[affected[k]] = UNREACHED;
+        }
+        IndexHeap open = ws.heap;
+        open.clear();
+        for (int k = 0; k < count; k++)
+        {
+            int u = affected[k], best = UNREACHED;
+            for (int d = 0; d < 4; d++)
+            {
+                int n = neighbor(u, d);
+                if (n >= 0 && !ws.visited(n) && dist[n] >= 0 && dist[n] != UNREACHED) best = Math.min(best, dist[n] + 1);
+            }
+            if (best != UNREACHED)
+            {
+                dist[u] = best;
+                open.push(best, u);
+            }
+        }
+        while (!open.isEmpty()) {
+            long du = open.peekKey();
+            int u = open.pop();
+            if (du != dist[u]) continue; // stale
+            for (int d = 0; d < 4; d++)
+            {
+                int n = neighbor(u, d);
+                if (n >= 0 && dist[n] != BLOCKED && dist[n] > du + 1)
+                {
+                    dist[n] = (int) du + 1;
+                    open.push(du + 1, n);
+                }
+            }
+        }
+    }
+
+    /**
+     * Pixel p is no longer an obstacle: its distance comes from its neighbors (or it is the source),
+     * and may lower the distances around it.
+     */
+    private void removeObstacle(int p)
+    {
+        int best = UNREACHED;
+        if (p == source)
+        {
+            best = 0;
+        }
+        else
+        {
+            for (int d = 0; d < 4; d++)
+            {
+                int n = neighbor(p, d);
+                if (n >= 0 && dist[n] >= 0 && dist[n] != UNREACHED) best = Math.min(best, dist[n] + 1);
+            }
+        }
+        dist[p] = best;
+        repaired++;
+        if (best != UNREACHED) spread(p);
+    }
+
+    /**
+     * BFS from pixel p (whose distance is known), lowering the distances of the pixels it reaches sooner.
+     */
+    private void spread(int p)
+    {
+        int[] q = BfsWorkspace.get().queueFor(w * h);
+        int head = 0, tail = 0;
+        q[tail++] = p;
+        while (head < tail) {
+            int u = q[head++];
+            int next = dist[u] + 1;
+            for (int d = 0; d < 4; d++)
+            {
+                int n = neighbor(u, d);
+                if (n >= 0 && dist[n] != BLOCKED && dist[n] > next)
+                {
+                    dist[n] = next;
+                    q[tail++] = n;
+                }
+            }
+        }
+        repaired += tail - 1;
+    }
+
+    /**
+     * @return the index of the 4-connected neighbor d of pixel i, or -1 outside a non-cyclic map.
+     */
+    private int neighbor(int i, int d)
+    {
+        return GridBfs.neighbor(i % w, i / w, GridBfs.DX[d], GridBfs.DY[d], w, h, cyclic);
+    }
+}
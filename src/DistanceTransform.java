@@ -0,0 +1,150 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The exact Euclidean distance transform of a flat row-major int[] map of w*h pixels (see Map.distanceTransform):
+ * the squared Euclidean distance from every pixel to its nearest obstacle, in O(w*h)
+ * (Felzenszwalb &amp; Huttenlocher, "Distance Transforms of Sampled Functions", 2012).
+ * The squared distance is separable - min over obstacles (x',y') of (x-x')^2 + (y-y')^2 - so it takes two passes:
+ * 1. Columns: g(x,y) = the vertical distance to the nearest obstacle in column x, by a downward and an upward
+ *    sweep. The sweeps go row by row (over a range of columns), so they read the map in memory order.
+ * 2. Rows: D(x,y) = min over x' of (x-x')^2 + g(x',y)^2, the lower envelope of the parabolas rooted at each
+ *    (x', g(x',y)^2), built left to right and then read left to right.
+ * Each pass is split in ranges of columns / rows run concurrently on a ForkJoinPool (see ParallelRange).
+ * On a cyclic map the distances go around the edges: the column sweeps run a first lap to learn the last
+ * obstacle before the top row, and the rows' envelopes are built over three copies of the row (the squared torus
+ * distance is still separable: the shortest way around each axis).
+ */
+public final class DistanceTransform {
+
+    private static final int INF = Integer.MAX_VALUE; // no obstacle (in the column / in the whole map)
+    private static final int LEAF = 64; // the columns / rows a task processes without forking
+
+    private DistanceTransform() {} // static methods only
+
+    /**
+     * Squared Euclidean distances to the nearest obstacle, on the common pool.
+     * @return a new w*h (row-major) array: 0 on the obstacles, -1 everywhere if there is no obstacle
+     * (a squared distance beyond Integer.MAX_VALUE - only on maps over 46340 pixels wide or high - is clamped to it).
+     */
+    public static int[] squared(int[] v, int w, int h, int obsColor, boolean cyclic)
+    {
+        return squared(v, w, h, obsColor, cyclic, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Squared Euclidean distances to the nearest obstacle (see squared(v, w, h, obsColor, cyclic)) on the given pool.
+     * @return a new w*h (row-major) array.
+     */
+    public static int[] squared(int[] v, int w, int h, int obsColor, boolean cyclic, ForkJoinPool pool)
+    {
+        final int[] g = new int[w * h], ans = new int[w * h];
+        ParallelRange.run(pool, w, LEAF, (x0, x1) -> columns(v, g, w, h, x0, x1, obsColor, cyclic));
+        ParallelRange.run(pool, h, LEAF, (y0, y1) -> rows(g, ans, w, y0, y1, cyclic));
+        return ans;
+    }
+
+    /**
+     * Pass 1 over columns [x0,x1): g = the vertical distance to the nearest obstacle of the column (INF if none).
+     */
+    private static void columns(int[] v, int[] g, int w, int h, int x0, int x1, int obsColor, boolean cyclic)
+    {
+        final int n = x1 - x0;
+        final int[] run = new int[n]; // the distance to the nearest obstacle above (below) the current row
+        java.util.Arrays.fill(run, INF);
+        if (cyclic) // a first lap: the distance from the last obstacle of each column, wrapping to the top row
+        {
+            for (int y = 0; y < h; y++)
+            {
+                sweep(v, null, run, y * w + x0, n, obsColor);
+            }
+        }
+        for (int y = 0; y < h; y++) // downwards: the nearest obstacle above
+        {
+            sweep(v, g, run, y * w + x0, n, obsColor);
+        }
+        java.util.Arrays.fill(run, INF);
+        if (cyclic)
+        {
+            for (int y = h - 1; y >= 0; y--)
+            {
+                sweep(v, null, run, y * w + x0, n, obsColor);
+            }
+        }
+        for (int y = h - 1; y >= 0; y--) // upwards: the nearest obstacle below, if nearer
+        {
+            int row = y * w + x0;
+            for (int k = 0; k < n; k++)
+            {
+                int r = v[row + k] == obsColor ? 0 : run[k] == INF ? INF : run[k] + 1;
+                run[k] = r;
+                if (r < g[row + k]) g[row + k] = r;
+            }
+        }
+    }
+
+    /**
+     * One row of a downward sweep: advances the run of each column by one row, and writes it to g (if not null).
+     */
+    private static void sweep(int[] v, int[] g, int[] run, int row, int n, int obsColor)
+    {
+        for (int k = 0; k < n; k++)
+        {
+            int r = v[row + k] == obsColor ? 0 : run[k] == INF ? INF : run[k] + 1;
+            run[k] = r;
+            if (g != null) g[row + k] = r;
+        }
+    }
+
+    /**
+     * Pass 2 over rows [y0,y1): the lower envelope of the parabolas (x-x')^2 + g(x',y)^2 of each row.
+     */
+    private static void rows(int[] g, int[] ans, int w, int y0, int y1, boolean cyclic)
+    {
+        final int copies = cyclic ? 3 : 1, m = copies * w; // the positions of the (repeated) row
+        final long[] f = new long[w]; // g^2 of the row, -1 where there is no obstacle in the column
+        final int[] loc = new int[m]; // the positions of the parabolas of the envelope, left to right
+        final long[] root = new long[m]; // their f + position^2
+        final double[] z = new double[m]; // z[k]: where parabola k starts to be the lowest one
+        for (int y = y0; y < y1; y++)
+        {
+            final int row = y * w;
+            for (int x = 0; x < w; x++)
+            {
+                int gx = g[row + x];
+                f[x] = gx == INF ? -1 : (long) gx * gx;
+            }
+            int k = -1;
+            for (int c = 0, q = 0; c < copies; c++)
+            {
+                for (int x = 0; x < w; x++, q++)
+                {
+                    if (f[x] < 0) continue; // no obstacle in this column: no parabola
+                    long fq = f[x] + (long) q * q;
+                    double s = Double.NEGATIVE_INFINITY;
+                    while (k >= 0) {
+                        s = (fq - root[k]) / (2.0 * (q - loc[k])); // where the parabolas of loc[k] and q cross
+                        if (s > z[k]) break;
+                        k--; // loc[k] is never the lowest one
+                    }
+                    k++;
+                    loc[k] = q;
+                    root[k] = fq;
+                    z[k] = k == 0 ? Double.NEGATIVE_INFINITY : s;
+                }
+            }
+            if (k < 0) // no obstacle in the whole map
+            {
+                java.util.Arrays.fill(ans, row, row + w, -1);
+                continue;
+            }
+            final int off = cyclic ? w : 0; // the copy whose envelope is read
+            for (int x = 0, j = 0; x < w; x++)
+            {
+                long q = x + off;
+                while (j < k && z[j + 1] < q) j++;
+                long d = (q - loc[j]) * (q - loc[j]) + root[j] - (long) loc[j] * loc[j];
+                ans[row + x] = (int) Math.min(d, Integer.MAX_VALUE);
+            }
+        }
+    }
+}
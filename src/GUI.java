@@ -100,7 +100,7 @@ public class GUI {
                     grid[y][x] = Integer.parseInt(tokens[x]);
                 }
             }
-            return new Map(grid);
+            return Map2DFactory.create(grid); // narrowest storage (byte/short/int) for the loaded values
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -127,9 +127,18 @@ public class GUI {
             // 2. Write Data: Use StringBuilder for efficient string concatenation
             for (int y = 0; y < h; y++) {
                 StringBuilder row = new StringBuilder();
-                for (int x = 0; x < w; x++) {
-                    row.append(map.getPixel(x, y));
-                    if (x < w - 1) row.append(" ");
+                if (map instanceof RleMap2D) {
+                    // Run-length encoded rows: write each run as its repeated value, no per pixel lookups
+                    RleMap2D rle = (RleMap2D) map;
+                    for (int k = 0; k < rle.getRunCount(y); k++) {
+                        row.append((rle.getRunValue(y, k) + " ").repeat(rle.getRunLength(y, k)));
+                    }
+                    row.setLength(row.length() - 1); // drop the trailing space
+                } else {
+                    for (int x = 0; x < w; x++) {
+                        row.append(map.getPixel(x, y));
+                        if (x < w - 1) row.append(" ");
+                    }
                 }
                 bw.write(row.toString());
                 bw.newLine();
@@ -0,0 +1,421 @@
+import java.util.Arrays;
+
+/**
+ * The shared grid BFS engine behind the fill, shortestPath and allDistance algorithms of Map
+ * (a flat row-major int[] of w*h pixels, pixel (x,y) at v[y*w+x]).
+ * All the searches work on packed y*w+x indices with a primitive queue, a single parent-index array
+ * and generation stamps taken from the per-thread BfsWorkspace - so in steady state a call only
+ * allocates its result (the path, or the distance array).
+ */
+public final class GridBfs {
+
+    // 4-connectivity moves (Right, Left, Down, Up), followed by the 4 diagonals for 8-connectivity
+    static final int[] DX = { 1, -1,  0,  0,  1,  1, -1, -1};
+    static final int[] DY = { 0,  0,  1, -1,  1, -1,  1, -1};
+
+    private GridBfs() {} // static methods only
+
+    /**
+     * @return the index of the neighbor (x+dx, y+dy) of (x,y), wrapped around the edges if cyclic,
+     * or -1 if it is outside a non-cyclic map.
+     */
+    static int neighbor(int x, int y, int dx, int dy, int w, int h, boolean cyclic)
+    {
+        int nx = x + dx, ny = y + dy;
+        if (cyclic)
+        {
+            if (nx < 0) nx += w; else if (nx >= w) nx -= w;
+            if (ny < 0) ny += h; else if (ny >= h) ny -= h;
+        }
+        else if (nx < 0 || nx >= w || ny < 0 || ny >= h)
+        {
+            return -1;
+        }
+        return ny * w + nx;
+    }
+
+    /**
+     * Scanline (span) fill of the 4-connected component of (fx,fy) - see Map.fill.
+     * @return the number of recolored pixels.
+     */
+    public static int fill(int[] v, int w, int h, int fx, int fy, int new_v, boolean cyclic)
+    {
+        if (fx < 0 || fx >= w || fy < 0 || fy >= h) return 0;
+        final int old = v[fy * w + fx];
+        if (old == new_v) return 0;
+
+        // The workspace queue is used as the stack of seeds (no visited marks: recolored pixels mark themselves)
+        BfsWorkspace ws = BfsWorkspace.get();
+        int[] stack = ws.queue;
+        int size = 0;
+        if (stack.length == 0) stack = ws.growQueue(0);
+        stack[size++] = fy * w + fx;
+        int ans = 0;
+        while (size > 0) {
+            int seed = stack[--size];
+            if (v[seed] != old) continue; // Already recolored by another span
+            int y = seed / w;
+            int row = y * w;
+
+            // Extend the span left and right over the old color (a cyclic span may wrap around the row end)
+            int lx = seed - row;
+            int len = 1;
+            if (cyclic)
+            {
+                while (len < w && v[row + (lx == 0 ? w - 1 : lx - 1)] == old) { lx = (lx == 0 ? w - 1 : lx - 1); len++; }
+                int rx = seed - row;
+                while (len < w && v[row + (rx + 1 == w ? 0 : rx + 1)] == old) { rx = (rx + 1 == w ? 0 : rx + 1); len++; }
+            }
+            else
+            {
+                while (lx > 0 && v[row + lx - 1] == old) { lx--; len++; }
+                int rx = seed - row;
+                while (rx < w - 1 && v[row + rx + 1] == old) { rx++; len++; }
+            }
+
+            // Recolor the whole span
+            for (int k = 0, x = lx; k < len; k++, x = (x + 1 == w ? 0 : x + 1))
+            {
+                v[row + x] = new_v;
+            }
+            ans += len;
+
+            // Seed the rows above and below: one seed per run of the old color under the span
+            for (int dy = -1; dy <= 1; dy += 2)
+            {
+                int ny = y + dy;
+                if (cyclic) ny = (ny + h) % h;
+                else if (ny < 0 || ny >= h) continue;
+                int nrow = ny * w;
+                boolean inRun = false;
+                for (int k = 0, x = lx; k < len; k++, x = (x + 1 == w ? 0 : x + 1))
+                {
+                    boolean isOld = v[nrow + x] == old;
+                    if (isOld && !inRun)
+                    {
+                        if (size == stack.length) stack = ws.growQueue(size);
+                        stack[size++] = nrow + x;
+                    }
+                    inRun = isOld;
+                }
+            }
+        }
+        return ans;
+    }
+
+    /**
+     * BFS shortest path (8-connectivity) avoiding obsColor - see Map.shortestPath.
+     * @return the path from p1 to p2 (inclusive), or null if there is none.
+     */
+    public static Pixel2D[] shortestPath(int[] v, int w, int h, Pixel2D p1, Pixel2D p2, int obsColor, boolean cyclic)
+    {
+        if (p1 == null || p2 == null) return null;
+        final int sx = p1.getX(), sy = p1.getY(), ex = p2.getX(), ey = p2.getY();
+        if (sx < 0 || sx >= w || sy < 0 || sy >= h) return null;
+        if (ex < 0 || ex >= w || ey < 0 || ey >= h) return null;
+        final int start = sy * w + sx, goal = ey * w + ex;
+        if (v[start] == obsColor || v[goal] == obsColor) return null;
+        if (start == goal) return new Pixel2D[]{p1};
+
+        BfsWorkspace ws = BfsWorkspace.get();
+        ws.begin(w * h);
+        final int[] q = ws.queue, parent = ws.parent;
+        int head = 0, tail = 0;
+        ws.visit(start);
+        q[tail++] = start;
+        boolean found = false;
+        while (head < tail && !found) {
+            int cur = q[head++];
+            int x = cur % w, y = cur / w;
+            for (int d = 0; d < 8; d++) {
+                int ni = neighbor(x, y, DX[d], DY[d], w, h, cyclic);
+                if (ni < 0 || ws.visited(ni) || v[ni] == obsColor) continue;
+                ws.visit(ni);
+                parent[ni] = cur;
+                if (ni == goal) {
+                    found = true;
+                    break;
+                }
+                q[tail++] = ni;
+            }
+        }
+        return found ? buildPath(parent, start, goal, w) : null;
+    }
+
+    /**
+     * BFS shortest paths (8-connectivity) avoiding obsColor from one start to several goals, in a single search
+     * which stops as soon as every goal is reached. The BFS tree does not depend on where the search stops,
+     * so each path is the one shortestPath(v, w, h, start, goal, obsColor, cyclic) returns.
+     * The goals are marked with a second stamp (side 1) of the workspace: a pixel of side 1 is a goal which
+     * was not reached yet, and becomes side 0 when it is.
+     * @param start the packed y*w+x index of the start (a free pixel).
+     * @param goals the packed y*w+x indices of the goals (-1 for a goal outside the map).
+     * @return the path to each goal (inclusive), null for a goal which can not be reached.
+     */
+    static Pixel2D[][] shortestPaths(int[] v, int w, int h, int start, int[] goals, int obsColor, boolean cyclic)
+    {
+        final int REACHED = 0, GOAL = 1;
+        BfsWorkspace ws = BfsWorkspace.get();
+        ws.begin(w * h, 2);
+        final int[] q = ws.queue, parent = ws.parent;
+        int head = 0, tail = 0;
+        ws.visit(start, REACHED);
+        q[tail++] = start;
+        int left = 0; // the goals not reached yet
+        for (int goal : goals)
+        {
+            if (goal < 0 || v[goal] == obsColor || ws.sideOf(goal) >= 0) continue; // outside, an obstacle, the start or a repeat
+            ws.visit(goal, GOAL);
+            left++;
+        }
+        while (head < tail && left > 0) {
+            int cur = q[head++];
+            int x = cur % w, y = cur / w;
+            for (int d = 0; d < 8; d++) {
+                int ni = neighbor(x, y, DX[d], DY[d], w, h, cyclic);
+                if (ni < 0 || ws.sideOf(ni) == REACHED || v[ni] == obsColor) continue;
+                if (ws.sideOf(ni) == GOAL) left--;
+                ws.visit(ni, REACHED);
+                parent[ni] = cur;
+                q[tail++] = ni;
+            }
+        }
+        Pixel2D[][] ans = new Pixel2D[goals.length][];
+        for (int k = 0; k < goals.length; k++)
+        {
+            int goal = goals[k];
+            if (goal >= 0 && v[goal] != obsColor && ws.sideOf(goal) == REACHED) ans[k] = buildPath(parent, start, goal, w);
+        }
+        return ans;
+    }
+
+    /**
+     * Bidirectional BFS shortest path (8-connectivity) avoiding obsColor: a forward search from p1 and
+     * a backward search from p2 (the moves are symmetric, also when cyclic) expand whole layers in turn,
+     * always the side with the smaller frontier, until a layer reaches a pixel of the other side.
+     * The first such meeting closes a shortest path, so the path has as many steps as the BFS one.
+     * Both sides share the workspace: one stamp per side, one parent array (forward pixels point
+     * towards p1, backward ones towards p2) and one queue array (forward from its start, backward from its end).
+     * @return the path from p1 to p2 (inclusive), or null if there is none.
+     */
+    public static Pixel2D[] shortestPathBidirectional(int[] v, int w, int h, Pixel2D p1, Pixel2D p2, int obsColor, boolean cyclic)
+    {
+        if (p1 == null || p2 == null) return null;
+        final int sx = p1.getX(), sy = p1.getY(), ex = p2.getX(), ey = p2.getY();
+        if (sx < 0 || sx >= w || sy < 0 || sy >= h) return null;
+        if (ex < 0 || ex >= w || ey < 0 || ey >= h) return null;
+        final int start = sy * w + sx, goal = ey * w + ex;
+        if (v[start] == obsColor || v[goal] == obsColor) return null;
+        if (start == goal) return new Pixel2D[]{p1};
+
+        final int FWD = 0, BWD = 1;
+        BfsWorkspace ws = BfsWorkspace.get();
+        ws.begin(w * h, 2);
+        final int[] q = ws.queue, parent = ws.parent;
+        int fHead = 0, fTail = 0; // forward queue: q[fHead..fTail)
+        int bHead = w * h - 1, bTail = w * h - 1; // backward queue: q(bTail..bHead], growing downwards
+        ws.visit(start, FWD);
+        q[fTail++] = start;
+        ws.visit(goal, BWD);
+        q[bTail--] = goal;
+        int meetF = -1, meetB = -1; // the meeting edge: a forward pixel and its backward neighbor
+
+        while (meetF < 0 && fHead < fTail && bHead > bTail) {
+            boolean forward = (fTail - fHead) <= (bHead - bTail);
+            int side = forward ? FWD : BWD;
+            int layerEnd = forward ? fTail : bTail; // expand exactly the current layer of this side
+            while (meetF < 0 && (forward ? fHead < layerEnd : bHead > layerEnd)) {
+                int cur = forward ? q[fHead++] : q[bHead--];
+                int x = cur % w, y = cur / w;
+                for (int d = 0; d < 8; d++) {
+                    int ni = neighbor(x, y, DX[d], DY[d], w, h, cyclic);
+                    if (ni < 0 || v[ni] == obsColor) continue;
+                    int other = ws.sideOf(ni);
+                    if (other == side) continue;
+                    if (other >= 0) { // the frontiers met
+                        meetF = forward ? cur : ni;
+                        meetB = forward ? ni : cur;
+                        break;
+                    }
+                    ws.visit(ni, side);
+                    parent[ni] = cur;
+                    if (forward) q[fTail++] = ni;
+                    else q[bTail--] = ni;
+                }
+            }
+        }
+        if (meetF < 0) return null;
+
+        // join the two parent chains: start..meetF (reversed forward chain) + meetB..goal (backward chain)
+        int lenF = 1, lenB = 1;
+        for (int c = meetF; c != start; c = parent[c]) lenF++;
+        for (int c = meetB; c != goal; c = parent[c]) lenB++;
+        Pixel2D[] ans = new Pixel2D[lenF + lenB];
+        for (int c = meetF, k = lenF - 1; k >= 0; c = parent[c], k--)
+        {
+            ans[k] = new Index2D(c % w, c / w);
+        }
+        for (int c = meetB, k = lenF; k < ans.length; c = parent[c], k++)
+        {
+            ans[k] = new Index2D(c % w, c / w);
+        }
+        return ans;
+    }
+
+    /**
+     * A* shortest path (8-connectivity) avoiding obsColor, guided by the octile distance to p2.
+     * Every move costs one step, so the octile distance is max(|dx|,|dy|) (on a cyclic map each axis
+     * takes the shorter way around): a consistent heuristic, hence the first time p2 is taken out of the
+     * queue its path is a shortest one - the same number of steps as the BFS path.
+     * With a consistent heuristic and unit moves, a child's f = g + h is within [f, f+2] of its parent's,
+     * so the priority queue is just 3 buckets (f mod 3) of stacks: the last pushed (deepest) pixel of the
+     * smallest f is expanded first, which breaks the (many) ties towards p2.
+     * Pixels may be pushed again when a shorter way to them is found; stale entries are skipped.
+     * @return the path from p1 to p2 (inclusive), or null if there is none.
+     */
+    public static Pixel2D[] shortestPathAStar(int[] v, int w, int h, Pixel2D p1, Pixel2D p2, int obsColor, boolean cyclic)
+    {
+        if (p1 == null || p2 == null) return null;
+        final int sx = p1.getX(), sy = p1.getY(), ex = p2.getX(), ey = p2.getY();
+        if (sx < 0 || sx >= w || sy < 0 || sy >= h) return null;
+        if (ex < 0 || ex >= w || ey < 0 || ey >= h) return null;
+        final int start = sy * w + sx, goal = ey * w + ex;
+        if (v[start] == obsColor || v[goal] == obsColor) return null;
+        if (start == goal) return new Pixel2D[]{p1};
+
+        final int OPEN = 0, CLOSED = 1;
+        BfsWorkspace ws = BfsWorkspace.get();
+        ws.begin(w * h, 2);
+        final int[] parent = ws.parent, cost = ws.cost;
+        final int[] size = new int[3]; // the number of entries in each bucket
+        int f = octile(sx, sy, ex, ey, w, h, cyclic); // the smallest f in the queue
+        ws.visit(start, OPEN);
+        cost[start] = 0;
+        if (ws.buckets[f % 3].length == 0) ws.growBucket(f % 3, 0);
+        ws.buckets[f % 3][size[f % 3]++] = start;
+        int pending = 1;
+        boolean found = false;
+        while (pending > 0 && !found) {
+            while (size[f % 3] == 0) f++;
+            int cur = ws.buckets[f % 3][--size[f % 3]];
+            pending--;
+            int x = cur % w, y = cur / w;
+            if (ws.sideOf(cur) == CLOSED || cost[cur] + octile(x, y, ex, ey, w, h, cyclic) != f) continue; // stale
+            if (cur == goal) {
+                found = true;
+                break;
+            }
+            ws.visit(cur, CLOSED);
+            int g = cost[cur] + 1;
+            for (int d = 0; d < 8; d++) {
+                int ni = neighbor(x, y, DX[d], DY[d], w, h, cyclic);
+                if (ni < 0 || v[ni] == obsColor) continue;
+                int side = ws.sideOf(ni);
+                if (side == CLOSED || (side == OPEN && cost[ni] <= g)) continue;
+                ws.visit(ni, OPEN);
+                cost[ni] = g;
+                parent[ni] = cur;
+                int b = (g + octile(ni % w, ni / w, ex, ey, w, h, cyclic)) % 3;
+                if (size[b] == ws.buckets[b].length) ws.growBucket(b, size[b]);
+                ws.buckets[b][size[b]++] = ni;
+                pending++;
+            }
+        }
+        return found ? buildPath(parent, start, goal, w) : null;
+    }
+
+    /**
+     * @return the octile (8-connectivity, unit moves) distance between (x,y) and (ex,ey), going around
+     * the edges when shorter if cyclic.
+     */
+    static int octile(int x, int y, int ex, int ey, int w, int h, boolean cyclic)
+    {
+        int dx = Math.abs(x - ex), dy = Math.abs(y - ey);
+        if (cyclic)
+        {
+            dx = Math.min(dx, w - dx);
+            dy = Math.min(dy, h - dy);
+        }
+        return Math.max(dx, dy);
+    }
+
+    /**
+     * BFS distance map (4-connectivity) from (sx,sy) avoiding obsColor - see Map.allDistance:
+     * unreachable pixels are -1 and obstacles are marked with obsColor.
+     * @return a new w*h (row-major) distance array.
+     */
+    public static int[] distances(int[] v, int w, int h, int sx, int sy, int obsColor, boolean cyclic)
+    {
+        boolean inside = sx >= 0 && sx < w && sy >= 0 && sy < h;
+        return distances(v, w, h, new int[]{inside ? sy * w + sx : -1}, obsColor, cyclic, null);
+    }
+
+    /**
+     * Multi-source BFS distance map (4-connectivity) avoiding obsColor: the distance of every pixel from
+     * its nearest seed, all the seeds expanding together in a single pass - the same marks as the single
+     * source distances (unreachable pixels are -1, obstacles obsColor).
+     * Seeds which are outside the map (-1) or obstacles are ignored.
+     * @param seeds the packed y*w+x indices of the seeds (-1 for a seed outside the map).
+     * @param labels if not null (w*h entries), gets the index in seeds of the nearest seed of every pixel
+     * (the smallest index when several seeds are the nearest), -1 for obstacles and unreachable pixels.
+     * @return a new w*h (row-major) distance array.
+     */
+    public static int[] distances(int[] v, int w, int h, int[] seeds, int obsColor, boolean cyclic, int[] labels)
+    {
+        final int[] dist = new int[w * h];
+        for (int i = 0; i < dist.length; i++)
+        {
+            dist[i] = v[i] == obsColor ? obsColor : -1;
+        }
+        if (labels != null) Arrays.fill(labels, 0, w * h, -1);
+
+        // The distance array is its own visited mark: a non obstacle pixel is visited iff its distance != -1
+        final int[] q = BfsWorkspace.get().queueFor(w * h);
+        int head = 0, tail = 0;
+        for (int k = 0; k < seeds.length; k++)
+        {
+            int i = seeds[k];
+            if (i < 0 || v[i] == obsColor || dist[i] != -1) continue; // outside, an obstacle or a repeated seed
+            dist[i] = 0;
+            if (labels != null) labels[i] = k;
+            q[tail++] = i;
+        }
+        while (head < tail) {
+            int cur = q[head++];
+            int x = cur % w, y = cur / w;
+            int next = dist[cur] + 1;
+            for (int d = 0; d < 4; d++) {
+                int ni = neighbor(x, y, DX[d], DY[d], w, h, cyclic);
+                if (ni < 0 || v[ni] == obsColor) continue;
+                if (dist[ni] == -1)
+                {
+                    dist[ni] = next;
+                    if (labels != null) labels[ni] = labels[cur];
+                    q[tail++] = ni;
+                }
+                else if (labels != null && dist[ni] == next && labels[cur] < labels[ni])
+                {
+                    // A tie: ni is not expanded yet (its whole layer comes after cur's), so its label may still change
+                    labels[ni] = labels[cur];
+                }
+            }
+        }
+        return dist;
+    }
+
+    /**
+     * Follows the parent indices from goal back to start.
+     * @return the path start..goal as an array of pixels.
+     */
+    static Pixel2D[] buildPath(int[] parent, int start, int goal, int w)
+    {
+        int len = 1;
+        for (int c = goal; c != start; c = parent[c]) len++;
+        Pixel2D[] ans = new Pixel2D[len];
+        for (int c = goal, k = len - 1; k >= 0; c = parent[c], k--)
+        {
+            ans[k] = new Index2D(c % w, c / w);
+        }
+        return ans;
+    }
+}
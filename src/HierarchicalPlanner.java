@@ -0,0 +1,695 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Hierarchical path finding (HPA*, Botea, Müller &amp; Schaeffer, "Near Optimal Hierarchical Path-Finding", 2004)
+ * over a Map: the map is cut into square clusters of size*size pixels, and the queries search a small abstract
+ * graph first, then refine its edges into pixels with searches inside single clusters - so a query costs about
+ * the length of its path in clusters, not the area of the map.
+ * The abstract graph:
+ * 1. Its nodes are transition pixels on the borders of the clusters. The crossings of a border (pairs of free
+ *    8-adjacent pixels in two clusters) are grouped by the pair of local components (8-connected inside the
+ *    cluster) they join; a group gets one transition in its middle, or two at its ends if it is long.
+ *    The choice only depends on the set of crossings, so both clusters make the same one, and the abstract graph
+ *    connects two pixels iff the map does (a path is found iff there is one).
+ * 2. Its edges are the transitions (one step) and, inside each cluster, the distances between its nodes.
+ * A query links p1 and p2 to the nodes of their clusters with a local BFS, and runs A* (octile heuristic) over the
+ * abstract graph. The path is near optimal: it goes through transition pixels, so it may be a few steps longer
+ * than the one of Map.shortestPath - this is why it is not one of the PathEngines.
+ * Moves are 8-connected with one step each (as Map.shortestPath), also when cyclic.
+ *
+ * The planner listens to the map (see MapListener): a pixel which becomes (or stops being) an obstacle only marks
+ * its cluster, and the next query rebuilds the transitions of the marked clusters and of their neighbors, and
+ * the node distances of the clusters whose nodes changed. Bulk changes (init, fill, mul, addMap2D, rescale)
+ * rebuild all the clusters, in parallel on the common ForkJoinPool. close() detaches the planner from its map.
+ * Not thread safe.
+ */
+public final class HierarchicalPlanner implements MapListener, AutoCloseable {
+
+    /** The cluster size of the planners created without one. */
+    public static final int DEFAULT_CLUSTER_SIZE = 32;
+
+    private static final int LONG_ENTRANCE = 6; // a group of at least that many crossings gets two transitions
+    private static final int LEAF = 16; // the clusters a task rebuilds without forking
+    private static final int OPEN = 0, CLOSED = 1; // the sides of the abstract search
+    private static final byte INSIDE = 0, CROSSING = 1; // the kinds of abstract edges
+
+    /**
+     * The abstract graph inside one cluster.
+     */
+    private static final class Cluster {
+        final int[] nodes; // the transition pixels (packed y*w+x indices), sorted
+        final int[] dist; // dist[a*k+b]: the steps from node a to node b inside the cluster, -1 if none
+        final int[] partnerStart; // the transitions of node a go to partner[partnerStart[a]..partnerStart[a+1])
+        final int[] partner;
+
+        Cluster(int[] nodes, int[] dist, int[] partnerStart, int[] partner)
+        {
+            this.nodes = nodes;
+            this.dist = dist;
+            this.partnerStart = partnerStart;
+            this.partner = partner;
+        }
+    }
+
+    /**
+     * Scratch memory of the local searches, over the cluster's own row-major grid with a blocked border of one
+     * pixel around it (stride*stride entries, see local), so the 8 neighbors of a cell are fixed offsets.
+     */
+    private static final class Scratch {
+        final int[] dist, queue, parent;
+        final int[] label; // the local components of a cluster (see components)
+        final boolean[] free; // the free pixels of the loaded cluster (see load)
+
+        Scratch(int cells)
+        {
+            dist = new int[cells];
+            queue = new int[cells];
+            parent = new int[cells];
+            label = new int[cells];
+            free = new boolean[cells];
+        }
+    }
+
+    private final Map map;
+    private final int obsColor, size, stride; // stride = size + 2: a row of the local grids
+    private final int[] offset; // the offsets of the 8 neighbors in a local grid
+    private final boolean cyclic;
+
+    private int w, h, gw, gh; // the map and the grid of clusters
+    private Cluster[] clusters = new Cluster[0];
+    private int[] first = new int[1]; // the abstract search's id of node a of cluster c is first[c] + a
+    private boolean[] dirty = new boolean[0]; // the clusters changed since the last update
+    private int[] dirtyList = new int[16];
+    private int dirtyCount;
+    private boolean[] mark = new boolean[0]; // a set of clusters during an update (cleared afterwards)
+    private boolean restart = true; // all the clusters have to be rebuilt
+    private boolean closed;
+    private int rebuilt; // the clusters whose node distances were recomputed by the last update
+    private Scratch scratch; // the local searches of the queries
+
+    /**
+     * Creates a planner with clusters of DEFAULT_CLUSTER_SIZE and registers it as a listener of the map.
+     * @param map the map to plan over.
+     * @param obsColor the color of the obstacles.
+     * @param cyclic whether the map wraps around its edges.
+     */
+    public HierarchicalPlanner(Map map, int obsColor, boolean cyclic)
+    {
+        this(map, obsColor, cyclic, DEFAULT_CLUSTER_SIZE);
+    }
+
+    /**
+     * Creates a planner and registers it as a listener of the map. The clusters are built on the first query.
+     * @param map the map to plan over.
+     * @param obsColor the color of the obstacles.
+     * @param cyclic whether the map wraps around its edges.
+     * @param clusterSize the width (and height) of a cluster, 2..1024.
+     */
+    public HierarchicalPlanner(Map map, int obsColor, boolean cyclic, int clusterSize)
+    {
+        if (map == null)
+        {
+            throw new IllegalArgumentException("map can't be null");
+        }
+        if (clusterSize < 2 || clusterSize > 1024)
+        {
+            throw new IllegalArgumentException("clusterSize must be within 2..1024, got " + clusterSize);
+        }
+        this.map = map;
+        this.obsColor = obsColor;
+        this.cyclic = cyclic;
+        this.size = clusterSize;
+        this.stride = clusterSize + 2;
+        this.offset = new int[8];
+        for (int d = 0; d < 8; d++)
+        {
+            offset[d] = GridBfs.DY[d] * stride + GridBfs.DX[d];
+        }
+        map.addMapListener(this);
+    }
+
+    /**
+     * Finds a near shortest path from p1 to p2 over the abstract graph (rebuilding the clusters changed since the
+     * last query first).
+     * @return a path from p1 to p2 (inclusive) of consecutive free pixels, or null if there is none (including when
+     * p1 or p2 is outside the map or an obstacle).
+     */
+    public Pixel2D[] findPath(Pixel2D p1, Pixel2D p2)
+    {
+        update();
+        if (p1 == null || p2 == null) return null;
+        final int sx = p1.getX(), sy = p1.getY(), ex = p2.getX(), ey = p2.getY();
+        if (sx < 0 || sx >= w || sy < 0 || sy >= h) return null;
+        if (ex < 0 || ex >= w || ey < 0 || ey >= h) return null;
+        if (blocked(sx, sy) || blocked(ex, ey)) return null;
+        final int start = sy * w + sx, goal = ey * w + ex;
+        if (start == goal) return new Pixel2D[]{p1};
+
+        // link the start and the goal to the nodes of their clusters
+        final int cs = clusterOf(sx, sy), cg = clusterOf(ex, ey);
+        final Cluster from = clusters[cs], to = clusters[cg];
+        load(cs, scratch);
+        localBfs(cs, start, scratch, false);
+        final int[] toNode = new int[from.nodes.length], fromNode = new int[to.nodes.length];
+        for (int a = 0; a < toNode.length; a++)
+        {
+            toNode[a] = scratch.dist[local(from.nodes[a], cs)];
+        }
+        final int direct = cs == cg ? scratch.dist[local(goal, cs)] : -1;
+        load(cg, scratch);
+        localBfs(cg, goal, scratch, false);
+        for (int a = 0; a < fromNode.length; a++)
+        {
+            fromNode[a] = scratch.dist[local(to.nodes[a], cg)];
+        }
+
+        // A* over the abstract graph: the nodes by their ids, then the start and the goal
+        final int startId = first[clusters.length], goalId = startId + 1;
+        BfsWorkspace ws = BfsWorkspace.get();
+        ws.begin(goalId + 1, 2);
+        final IndexHeap open = ws.heap;
+        open.clear();
+        ws.visit(startId, OPEN);
+        ws.cost[startId] = 0;
+        open.push(octile(start, ex, ey), startId);
+        boolean found = false;
+        while (!open.isEmpty()) {
+            long key = open.peekKey();
+            int u = open.pop();
+            if (ws.sideOf(u) == CLOSED || ws.cost[u] + octile(pixelOf(u, start, goal), ex, ey) != key) continue; // stale
+            if (u == goalId) {
+                found = true;
+                break;
+            }
+            ws.visit(u, CLOSED);
+            final int g = ws.cost[u];
+            if (u == startId)
+            {
+                for (int a = 0; a < toNode.length; a++)
+                {
+                    if (toNode[a] >= 0) relax(ws, first[cs] + a, from.nodes[a], g + toNode[a], u, INSIDE, ex, ey);
+                }
+                if (direct > 0) relax(ws, goalId, goal, g + direct, u, INSIDE, ex, ey);
+                continue;
+            }
+            final int c = clusterOfId(u), a = u - first[c];
+            final Cluster cl = clusters[c];
+            final int k = cl.nodes.length;
+            for (int b = 0; b < k; b++)
+            {
+                int d = cl.dist[a * k + b];
+                if (d > 0) relax(ws, first[c] + b, cl.nodes[b], g + d, u, INSIDE, ex, ey);
+            }
+            for (int j = cl.partnerStart[a]; j < cl.partnerStart[a + 1]; j++)
+            {
+                int q = cl.partner[j], nc = clusterOf(q % w, q / w), b = Arrays.binarySearch(clusters[nc].nodes, q);
+                // (on a cyclic map thinner than a cluster, a crossing may wrap into its own cluster without a node there)
+                if (b >= 0) relax(ws, first[nc] + b, q, g + 1, u, CROSSING, ex, ey);
+            }
+            if (c == cg && fromNode[a] >= 0) relax(ws, goalId, goal, g + fromNode[a], u, INSIDE, ex, ey);
+        }
+        return found ? refine(ws, startId, goalId, start, goal) : null;
+    }
+
+    /**
+     * @return the width (and height) of a cluster.
+     */
+    public int getClusterSize()
+    {
+        return size;
+    }
+
+    /**
+     * @return the number of nodes of the abstract graph (after the changes of the map so far).
+     */
+    public int getNodeCount()
+    {
+        update();
+        return first[clusters.length];
+    }
+
+    /**
+     * @return the number of clusters whose node distances were recomputed by the last rebuild (the cost of the
+     * last update - all of them after a bulk change).
+     */
+    public int getRebuilt()
+    {
+        return rebuilt;
+    }
+
+    /**
+     * Detaches the planner from its map (it can not be queried anymore).
+     */
+    @Override
+    public void close()
+    {
+        if (!closed)
+        {
+            closed = true;
+            map.removeMapListener(this);
+        }
+    }
+
+    @Override
+    public void pixelChanged(Map map, int x, int y, int oldValue, int newValue)
+    {
+        if (restart || (oldValue == obsColor) == (newValue == obsColor)) return; // not an obstacle change
+        int c = clusterOf(x, y);
+        if (dirty[c]) return;
+        dirty[c] = true;
+        if (dirtyCount == dirtyList.length)
+        {
+            dirtyList = Arrays.copyOf(dirtyList, dirtyCount * 2);
+        }
+        dirtyList[dirtyCount++] = c;
+    }
+
+    @Override
+    public void mapChanged(Map map)
+    {
+        restart = true;
+    }
+
+    ////////////////////// Queries /////////////////////////
+    /**
+     * Opens the abstract node of id v (at pixel p) at cost g, reached from u by an edge of this kind - unless it
+     * is closed or open at a lower cost.
+     */
+    private void relax(BfsWorkspace ws, int v, int p, int g, int u, byte kind, int ex, int ey)
+    {
+        int side = ws.sideOf(v);
+        if (side == CLOSED || (side == OPEN && ws.cost[v] <= g)) return;
+        ws.visit(v, OPEN);
+        ws.cost[v] = g;
+        ws.parent[v] = u;
+        ws.move[v] = kind;
+        ws.heap.push(g + octile(p, ex, ey), v);
+    }
+
+    /**
+     * @return the cluster of the node of this id (the last cluster whose first id is not larger).
+     */
+    private int clusterOfId(int id)
+    {
+        int lo = 0, hi = clusters.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (first[mid] <= id) lo = mid;
+            else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    /**
+     * @return the pixel of an abstract id: a node, or the start or the goal of the query (the two ids past the nodes).
+     */
+    private int pixelOf(int id, int start, int goal)
+    {
+        final int nodes = first[clusters.length];
+        if (id >= nodes) return id == nodes ? start : goal;
+        final int c = clusterOfId(id);
+        return clusters[c].nodes[id - first[c]];
+    }
+
+    /**
+     * Expands the abstract path (the parent chain from goal back to start) into pixels: a transition is a single
+     * step, and an edge inside a cluster is the path of a BFS inside it.
+     */
+    private Pixel2D[] refine(BfsWorkspace ws, int startId, int goalId, int start, int goal)
+    {
+        int n = 1;
+        for (int c = goalId; c != startId; c = ws.parent[c]) n++;
+        final int[] way = new int[n]; // the abstract path, from start to goal (ids)
+        for (int c = goalId, k = n - 1; k >= 0; k--)
+        {
+            way[k] = c;
+            if (k > 0) c = ws.parent[c];
+        }
+        final Pixel2D[] ans = new Pixel2D[ws.cost[goalId] + 1];
+        int len = 0;
+        ans[len++] = new Index2D(start % w, start / w);
+        for (int k = 1; k < n; k++)
+        {
+            int u = pixelOf(way[k - 1], start, goal), v = pixelOf(way[k], start, goal);
+            if (ws.move[way[k]] == CROSSING)
+            {
+                ans[len++] = new Index2D(v % w, v / w);
+                continue;
+            }
+            if (u == v) continue; // the start or the goal on a node
+            int c = clusterOf(u % w, u / w), x0 = c % gw * size, y0 = c / gw * size;
+            load(c, scratch);
+            localBfs(c, u, scratch, true);
+            int steps = scratch.dist[local(v, c)];
+            for (int i = local(v, c), j = len + steps - 1; j >= len; i = scratch.parent[i], j--)
+            {
+                ans[j] = new Index2D(x0 + i % stride - 1, y0 + i / stride - 1);
+            }
+            len += steps;
+        }
+        return ans;
+    }
+
+    private int octile(int i, int ex, int ey)
+    {
+        return GridBfs.octile(i % w, i / w, ex, ey, w, h, cyclic);
+    }
+
+    ////////////////////// Clusters /////////////////////////
+    private boolean blocked(int x, int y)
+    {
+        return map.getPixel(x, y) == obsColor;
+    }
+
+    private int clusterOf(int x, int y)
+    {
+        return y / size * gw + x / size;
+    }
+
+    /**
+     * @return the index of pixel i (of cluster c) in the local grid of the cluster (see Scratch).
+     */
+    private int local(int i, int c)
+    {
+        return (i / w - c / gw * size + 1) * stride + i % w - c % gw * size + 1;
+    }
+
+    /**
+     * @return the cluster next to cluster c in direction d (see GridBfs.DX / DY), or -1 beyond the edge of the map.
+     */
+    private int neighbor(int c, int d)
+    {
+        int cx = c % gw + GridBfs.DX[d], cy = c / gw + GridBfs.DY[d];
+        if (cyclic)
+        {
+            cx = (cx + gw) % gw;
+            cy = (cy + gh) % gh;
+        }
+        else if (cx < 0 || cx >= gw || cy < 0 || cy >= gh)
+        {
+            return -1;
+        }
+        return cy * gw + cx;
+    }
+
+    /**
+     * Reads the free pixels of cluster c into s.free, for the local searches (one map read per pixel).
+     */
+    private void load(int c, Scratch s)
+    {
+        final int x0 = c % gw * size, y0 = c / gw * size;
+        final int cw = Math.min(size, w - x0), ch = Math.min(size, h - y0);
+        Arrays.fill(s.free, false);
+        for (int ly = 0; ly < ch; ly++)
+        {
+            for (int lx = 0, i = (ly + 1) * stride + 1; lx < cw; lx++, i++)
+            {
+                s.free[i] = !blocked(x0 + lx, y0 + ly);
+            }
+        }
+    }
+
+    /**
+     * BFS (8-connectivity) from pixel from inside its cluster c (loaded into s), into s.dist (-1 where it does not
+     * get) and s.parent if parents.
+     */
+    private void localBfs(int c, int from, Scratch s, boolean parents)
+    {
+        final int[] dist = s.dist, queue = s.queue;
+        final boolean[] free = s.free;
+        Arrays.fill(dist, -1);
+        int head = 0, tail = 0, f = local(from, c);
+        dist[f] = 0;
+        queue[tail++] = f;
+        while (head < tail) {
+            int cur = queue[head++], next = dist[cur] + 1;
+            for (int d = 0; d < 8; d++) {
+                int ni = cur + offset[d];
+                if (dist[ni] >= 0 || !free[ni]) continue; // the border is never free
+                dist[ni] = next;
+                if (parents) s.parent[ni] = cur;
+                queue[tail++] = ni;
+            }
+        }
+    }
+
+    /**
+     * @return the local components of cluster c on its border: the label of each border pixel (see borderIndex),
+     * -1 for obstacles - the only ones the transitions read.
+     */
+    private int[] components(int c, Scratch s)
+    {
+        final int[] label = s.label, queue = s.queue;
+        final boolean[] free = s.free;
+        Arrays.fill(label, -1);
+        load(c, s);
+        int count = 0;
+        for (int i = 0; i < label.length; i++)
+        {
+            if (label[i] >= 0 || !free[i]) continue;
+            int head = 0, tail = 0;
+            label[i] = count;
+            queue[tail++] = i;
+            while (head < tail) {
+                int cur = queue[head++];
+                for (int d = 0; d < 8; d++) {
+                    int ni = cur + offset[d];
+                    if (label[ni] >= 0 || !free[ni]) continue;
+                    label[ni] = count;
+                    queue[tail++] = ni;
+                }
+            }
+            count++;
+        }
+        final int cw = Math.min(size, w - c % gw * size), ch = Math.min(size, h - c / gw * size);
+        final int[] border = new int[2 * (cw + ch)];
+        for (int ly = 0; ly < ch; ly++)
+        {
+            for (int lx = 0; lx < cw; lx = ly == 0 || ly == ch - 1 || lx == cw - 1 ? lx + 1 : cw - 1)
+            {
+                border[borderIndex(lx, ly, cw, ch)] = label[(ly + 1) * stride + lx + 1];
+            }
+        }
+        return border;
+    }
+
+    /**
+     * @return the index of the border pixel (lx,ly) of a cw*ch cluster in the border labels of components:
+     * the top row, the bottom row, then the left and the right column.
+     */
+    private static int borderIndex(int lx, int ly, int cw, int ch)
+    {
+        if (ly == 0) return lx;
+        if (ly == ch - 1) return cw + lx;
+        return lx == 0 ? 2 * cw + ly : 2 * cw + ch + ly;
+    }
+
+    /**
+     * @return the label of the local component of border pixel i of cluster c.
+     */
+    private int borderLabel(int[][] labels, int i, int c)
+    {
+        final int x0 = c % gw * size, y0 = c / gw * size;
+        return labels[c][borderIndex(i % w - x0, i / w - y0, Math.min(size, w - x0), Math.min(size, h - y0))];
+    }
+
+    /**
+     * Rebuilds the changed clusters: all of them after a bulk change, else the marked ones and their neighbors.
+     */
+    private void update()
+    {
+        if (closed)
+        {
+            throw new IllegalStateException("HierarchicalPlanner was closed");
+        }
+        if (restart)
+        {
+            restart = false;
+            w = map.getWidth();
+            h = map.getHeight();
+            gw = (w + size - 1) / size;
+            gh = (h + size - 1) / size;
+            final int n = gw * gh;
+            clusters = new Cluster[n];
+            dirty = new boolean[n];
+            mark = new boolean[n];
+            dirtyCount = 0;
+            if (scratch == null) scratch = new Scratch(stride * stride);
+            final int[] all = new int[n];
+            for (int c = 0; c < n; c++)
+            {
+                all[c] = c;
+            }
+            rebuild(all, n, all, n, true);
+            number();
+            return;
+        }
+        if (dirtyCount == 0) return;
+        // the marked clusters and their neighbors get new transitions; their labels need one more ring
+        final int[] list = around(dirtyList, dirtyCount);
+        final int[] labeled = around(list, list.length);
+        rebuild(list, list.length, labeled, labeled.length, false);
+        for (int k = 0; k < dirtyCount; k++)
+        {
+            dirty[dirtyList[k]] = false;
+        }
+        dirtyCount = 0;
+        number();
+    }
+
+    /**
+     * Numbers the nodes of the clusters for the abstract search (see first).
+     */
+    private void number()
+    {
+        if (first.length != clusters.length + 1) first = new int[clusters.length + 1];
+        for (int c = 0; c < clusters.length; c++)
+        {
+            first[c + 1] = first[c] + clusters[c].nodes.length;
+        }
+    }
+
+    /**
+     * @return the first count clusters of list and their neighbors, each one once.
+     */
+    private int[] around(int[] list, int count)
+    {
+        int[] ans = new int[count * 9];
+        int n = 0;
+        for (int k = 0; k < count; k++)
+        {
+            for (int d = -1; d < 8; d++)
+            {
+                int c = d < 0 ? list[k] : neighbor(list[k], d);
+                if (c < 0 || mark[c]) continue;
+                mark[c] = true;
+                ans[n++] = c;
+            }
+        }
+        for (int k = 0; k < n; k++)
+        {
+            mark[ans[k]] = false;
+        }
+        return Arrays.copyOf(ans, n);
+    }
+
+    /**
+     * Computes the transitions of the first count clusters of list (from the local components of the clusters
+     * of labeled, of which only the border labels are kept), and the node distances of those which are dirty
+     * (or all) or whose nodes changed.
+     */
+    private void rebuild(int[] list, int count, int[] labeled, int labeledCount, boolean all)
+    {
+        final ForkJoinPool pool = ForkJoinPool.commonPool();
+        final int[][] labels = new int[clusters.length][];
+        ParallelRange.run(pool, labeledCount, LEAF, (from, to) -> {
+            Scratch s = new Scratch(stride * stride);
+            for (int k = from; k < to; k++)
+            {
+                labels[labeled[k]] = components(labeled[k], s);
+            }
+        });
+        final boolean[] tabled = new boolean[count];
+        ParallelRange.run(pool, count, LEAF, (from, to) -> {
+            Scratch s = new Scratch(stride * stride);
+            for (int k = from; k < to; k++)
+            {
+                tabled[k] = build(list[k], labels, s, all);
+            }
+        });
+        rebuilt = 0;
+        for (boolean t : tabled)
+        {
+            if (t) rebuilt++;
+        }
+    }
+
+    /**
+     * Rebuilds cluster c: its transitions, and its node distances if forced, dirty or its nodes changed.
+     * @return whether the node distances were recomputed.
+     */
+    private boolean build(int c, int[][] labels, Scratch s, boolean force)
+    {
+        final int x0 = c % gw * size, y0 = c / gw * size, x1 = Math.min(w, x0 + size), y1 = Math.min(h, y0 + size);
+        final long n = (long) w * h;
+        // every crossing of the border: {group, pair, p, q} - the group is the direction and the two components
+        long[][] cross = new long[16][];
+        int m = 0;
+        for (int y = y0; y < y1; y++)
+        {
+            boolean edgeRow = y == y0 || y == y1 - 1;
+            for (int x = x0; x < x1; x = edgeRow || x == x1 - 1 ? x + 1 : x1 - 1)
+            {
+                if (blocked(x, y)) continue;
+                final int p = y * w + x;
+                for (int d = 0; d < 8; d++)
+                {
+                    int nx = x + GridBfs.DX[d], ny = y + GridBfs.DY[d];
+                    boolean crossX = nx < x0 || nx >= x1, crossY = ny < y0 || ny >= y1;
+                    if (!crossX && !crossY) continue;
+                    int q = GridBfs.neighbor(x, y, GridBfs.DX[d], GridBfs.DY[d], w, h, cyclic);
+                    if (q < 0 || blocked(q % w, q / w)) continue;
+                    int nc = clusterOf(q % w, q / w);
+                    long dir = (crossX ? GridBfs.DX[d] + 1 : 1) * 3 + (crossY ? GridBfs.DY[d] + 1 : 1);
+                    long group = dir << 40 | (long) borderLabel(labels, p, c) << 20 | borderLabel(labels, q, nc);
+                    if (m == cross.length) cross = Arrays.copyOf(cross, m * 2);
+                    cross[m++] = new long[]{group, Math.min(p, q) * n + Math.max(p, q), p, q};
+                }
+            }
+        }
+        Arrays.sort(cross, 0, m, Comparator.<long[]>comparingLong(e -> e[0]).thenComparingLong(e -> e[1]));
+
+        // the transitions: the middle crossing of each group, or both ends of a long one
+        final int[][] chosen = new int[m][];
+        int t = 0;
+        for (int i = 0, j; i < m; i = j)
+        {
+            j = i;
+            while (j < m && cross[j][0] == cross[i][0]) j++;
+            if (j - i < LONG_ENTRANCE)
+            {
+                chosen[t++] = transition(cross[(i + j - 1) / 2]);
+            }
+            else
+            {
+                chosen[t++] = transition(cross[i]);
+                chosen[t++] = transition(cross[j - 1]);
+            }
+        }
+        Arrays.sort(chosen, 0, t, Comparator.<int[]>comparingInt(e -> e[0]).thenComparingInt(e -> e[1]));
+        int k = 0;
+        final int[] nodes = new int[t], partnerStart = new int[t + 1], partner = new int[t];
+        for (int i = 0; i < t; i++)
+        {
+            if (k == 0 || nodes[k - 1] != chosen[i][0]) nodes[k++] = chosen[i][0];
+            partner[i] = chosen[i][1];
+            partnerStart[k] = i + 1;
+        }
+        final int[] sorted = Arrays.copyOf(nodes, k);
+
+        final Cluster old = clusters[c];
+        boolean table = force || dirty[c] || old == null || !Arrays.equals(old.nodes, sorted);
+        int[] dist = table ? new int[k * k] : old.dist;
+        if (table)
+        {
+            load(c, s);
+            for (int a = 0; a < k; a++)
+            {
+                localBfs(c, sorted[a], s, false);
+                for (int b = 0; b < k; b++)
+                {
+                    dist[a * k + b] = s.dist[local(sorted[b], c)];
+                }
+            }
+        }
+        clusters[c] = new Cluster(sorted, dist, Arrays.copyOf(partnerStart, k + 1), partner);
+        return table;
+    }
+
+    private static int[] transition(long[] crossing)
+    {
+        return new int[]{(int) crossing[2], (int) crossing[3]};
+    }
+}
@@ -0,0 +1,92 @@
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of (priority, pixel index) entries over primitive arrays, for the best first
+ * grid searches (A* over jump points, D* Lite...). It has no decrease-key: a search pushes a pixel
+ * again with its new priority and skips the stale entries when they come out.
+ * The arrays only grow, and are kept for reuse after clear().
+ */
+public final class IndexHeap {
+
+    private long[] keys = new long[0]; // keys[k] is the priority of the entry at position k
+    private int[] nodes = new int[0];
+    private int size;
+
+    /**
+     * Empties the heap.
+     */
+    public void clear()
+    {
+        size = 0;
+    }
+
+    /**
+     * @return true iff the heap is empty.
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Adds pixel i with the given priority (smaller first).
+     */
+    public void push(long key, int i)
+    {
+        if (size == keys.length)
+        {
+            keys = Arrays.copyOf(keys, Math.max(16, size * 2));
+            nodes = Arrays.copyOf(nodes, keys.length);
+        }
+        int k = size++;
+        while (k > 0) { // sift up
+            int p = (k - 1) >>> 1;
+            if (keys[p] <= key) break;
+            keys[k] = keys[p];
+            nodes[k] = nodes[p];
+            k = p;
+        }
+        keys[k] = key;
+        nodes[k] = i;
+    }
+
+    /**
+     * @return the smallest priority in the (non empty) heap.
+     */
+    public long peekKey()
+    {
+        return keys[0];
+    }
+
+    /**
+     * @return the pixel of the entry with the smallest priority in the (non empty) heap.
+     */
+    public int peek()
+    {
+        return nodes[0];
+    }
+
+    /**
+     * Removes the entry with the smallest priority from the (non empty) heap.
+     * @return its pixel.
+     */
+    public int pop()
+    {
+        int ans = nodes[0];
+        long key = keys[--size];
+        int i = nodes[size];
+        int k = 0;
+        while (true) { // sift down
+            int c = 2 * k + 1;
+            if (c >= size) break;
+            if (c + 1 < size && keys[c + 1] < keys[c]) c++;
+            if (key <= keys[c]) break;
+            keys[k] = keys[c];
+            nodes[k] = nodes[c];
+            k = c;
+        }
+        keys[k] = key;
+        nodes[k] = i;
+        return ans;
+    }
+}
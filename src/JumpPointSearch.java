@@ -0,0 +1,354 @@
+/**
+ * Jump Point Search (JPS) over a flat row-major int[] map of w*h pixels - see Map.shortestPath.
+ * An A* search (octile heuristic, as in GridBfs.shortestPathAStar) which does not expand every open
+ * neighbor: from a pixel it only follows the directions which may start a shortest path (the "natural"
+ * and "forced" neighbors of the direction it was reached from), and along each of them it jumps over all
+ * the pixels which need no decision, to the next "jump point" - a pixel with a forced neighbor, or the goal.
+ * On large open regions a single step of the search crosses the whole region.
+ * As in the BFS, moves are 8-connected (diagonals may cut corners) and every move is one step, so the
+ * path has the same number of steps as the BFS one. On a cyclic map the jumps wrap around the edges
+ * (a jump which comes back to its own start pixel finds nothing).
+ *
+ * JPS+ (a JumpTable) precomputes, for every pixel and direction, the distance to the next jump point
+ * (or to the wall), so a jump costs O(1) instead of a scan; the goal is found at query time.
+ */
+public final class JumpPointSearch {
+
+    // direction d is (GridBfs.DX[d], GridBfs.DY[d]); DIR[dx+1][dy+1] is the direction of (dx,dy)
+    private static final int[][] DIR = {{7, 1, 6}, {3, -1, 2}, {5, 0, 4}};
+    private static final int OPEN = 0, CLOSED = 1;
+
+    private final int[] v;
+    private final int w, h, obsColor, goal, gx, gy;
+    private final boolean cyclic;
+    private final JumpTable table; // null for plain JPS
+
+    private JumpPointSearch(int[] v, int w, int h, int obsColor, boolean cyclic, int gx, int gy, JumpTable table)
+    {
+        this.v = v;
+        this.w = w;
+        this.h = h;
+        this.obsColor = obsColor;
+        this.cyclic = cyclic;
+        this.gx = gx;
+        this.gy = gy;
+        this.goal = gy * w + gx;
+        this.table = table;
+    }
+
+    /**
+     * JPS shortest path (8-connectivity) avoiding obsColor.
+     * @param table a JPS+ table built for this map, obsColor and cyclic (see JumpTable.build), or null to scan the jumps.
+     * @return the path from p1 to p2 (inclusive), or null if there is none.
+     */
+    public static Pixel2D[] shortestPath(int[] v, int w, int h, Pixel2D p1, Pixel2D p2, int obsColor, boolean cyclic, JumpTable table)
+    {
+        if (p1 == null || p2 == null) return null;
+        final int sx = p1.getX(), sy = p1.getY(), ex = p2.getX(), ey = p2.getY();
+        if (sx < 0 || sx >= w || sy < 0 || sy >= h) return null;
+        if (ex < 0 || ex >= w || ey < 0 || ey >= h) return null;
+        final int start = sy * w + sx, goal = ey * w + ex;
+        if (v[start] == obsColor || v[goal] == obsColor) return null;
+        if (start == goal) return new Pixel2D[]{p1};
+        if (table != null && !table.isFor(w, h, obsColor, cyclic))
+        {
+            throw new IllegalArgumentException("the jump table was built for another map");
+        }
+        return new JumpPointSearch(v, w, h, obsColor, cyclic, ex, ey, table).search(start);
+    }
+
+    /**
+     * A* over the jump points: the workspace cost array holds g, parent the previous jump point and move
+     * the direction a jump point was reached from (the jump between them is a straight or diagonal line).
+     */
+    private Pixel2D[] search(int start)
+    {
+        BfsWorkspace ws = BfsWorkspace.get();
+        ws.begin(w * h, 2);
+        ws.heap.clear();
+        final int[] parent = ws.parent, cost = ws.cost;
+        final byte[] move = ws.move;
+        ws.visit(start, OPEN);
+        cost[start] = 0;
+        move[start] = -1; // no direction: all the 8 neighbors are followed
+        ws.heap.push(key(start, 0), start);
+        while (!ws.heap.isEmpty()) {
+            long k = ws.heap.peekKey();
+            int cur = ws.heap.pop();
+            if (ws.sideOf(cur) == CLOSED || key(cur, cost[cur]) != k) continue; // stale entry
+            if (cur == goal) return path(start, parent, cost, move);
+            ws.visit(cur, CLOSED);
+            int dirs = successors(cur, move[cur]);
+            for (int d = 0; d < 8; d++) {
+                if ((dirs & (1 << d)) == 0) continue;
+                long j = table == null ? jump(cur, d) : table.jump(this, cur, d);
+                if (j < 0) continue;
+                int n = (int) j, g = cost[cur] + (int) (j >>> 32);
+                int side = ws.sideOf(n);
+                if (side == CLOSED || (side == OPEN && cost[n] <= g)) continue;
+                ws.visit(n, OPEN);
+                cost[n] = g;
+                parent[n] = cur;
+                move[n] = (byte) d;
+                ws.heap.push(key(n, g), n);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the priority of pixel i reached in g steps: f = g + octile distance to the goal,
+     * ties broken towards the larger g (the pixel closer to the goal).
+     */
+    private long key(int i, int g)
+    {
+        int f = g + GridBfs.octile(i % w, i / w, gx, gy, w, h, cyclic);
+        return ((long) f << 32) | (Integer.MAX_VALUE - g);
+    }
+
+    /**
+     * Unfolds the jumps (straight or diagonal lines) from the goal back to the start.
+     */
+    private Pixel2D[] path(int start, int[] parent, int[] cost, byte[] move)
+    {
+        Pixel2D[] ans = new Pixel2D[cost[goal] + 1];
+        int k = ans.length - 1;
+        for (int c = goal; c != start; c = parent[c])
+        {
+            int d = move[c];
+            for (int s = cost[c] - cost[parent[c]], x = c % w, y = c / w; s > 0; s--)
+            {
+                ans[k--] = new Index2D(x, y);
+                int p = GridBfs.neighbor(x, y, -GridBfs.DX[d], -GridBfs.DY[d], w, h, cyclic);
+                x = p % w;
+                y = p / w;
+            }
+        }
+        ans[0] = new Index2D(start % w, start / w);
+        return ans;
+    }
+
+    ////////////////////// Pruning /////////////////////////
+    /**
+     * @return the directions (a bit mask) to follow from pixel i, which was reached by moving in direction d
+     * (-1 for the start): the natural neighbors - straight on, and for a diagonal also its two straight
+     * components - and the forced ones (around an obstacle which blocks the shorter way to them).
+     */
+    private int successors(int i, int d)
+    {
+        if (d < 0) return 0xFF;
+        final int dx = GridBfs.DX[d], dy = GridBfs.DY[d], x = i % w, y = i / w;
+        int ans = 1 << d;
+        if (dx != 0 && dy != 0)
+        {
+            ans |= 1 << DIR[dx + 1][1] | 1 << DIR[1][dy + 1];
+            if (!free(x, y, -dx, 0) && free(x, y, -dx, dy)) ans |= 1 << DIR[-dx + 1][dy + 1];
+            if (!free(x, y, 0, -dy) && free(x, y, dx, -dy)) ans |= 1 << DIR[dx + 1][-dy + 1];
+        }
+        else
+        {
+            int px = dy, py = dx; // perpendicular to the move
+            if (!free(x, y, px, py) && free(x, y, dx + px, dy + py)) ans |= 1 << DIR[dx + px + 1][dy + py + 1];
+            if (!free(x, y, -px, -py) && free(x, y, dx - px, dy - py)) ans |= 1 << DIR[dx - px + 1][dy - py + 1];
+        }
+        return ans;
+    }
+
+    /**
+     * @return true iff pixel (x,y) has a forced neighbor when reached by moving in direction (dx,dy).
+     */
+    private boolean forced(int x, int y, int dx, int dy)
+    {
+        if (dx != 0 && dy != 0)
+        {
+            return (!free(x, y, -dx, 0) && free(x, y, -dx, dy)) || (!free(x, y, 0, -dy) && free(x, y, dx, -dy));
+        }
+        int px = dy, py = dx;
+        return (!free(x, y, px, py) && free(x, y, dx + px, dy + py)) || (!free(x, y, -px, -py) && free(x, y, dx - px, dy - py));
+    }
+
+    /**
+     * @return true iff the neighbor (x+dx, y+dy) is inside the map (or cyclic) and is not an obstacle.
+     */
+    private boolean free(int x, int y, int dx, int dy)
+    {
+        int n = GridBfs.neighbor(x, y, dx, dy, w, h, cyclic);
+        return n >= 0 && v[n] != obsColor;
+    }
+
+    ////////////////////// Jumping /////////////////////////
+    /**
+     * Scans from pixel c in direction d to the next jump point.
+     * @return the jump point and its distance packed as (steps << 32) | index, or -1 if there is none
+     * (an obstacle, the edge of the map, or back to c on a cyclic map).
+     */
+    private long jump(int c, int d)
+    {
+        final int dx = GridBfs.DX[d], dy = GridBfs.DY[d];
+        final boolean diagonal = dx != 0 && dy != 0;
+        int x = c % w, y = c / w;
+        for (long steps = 1; ; steps++)
+        {
+            int n = GridBfs.neighbor(x, y, dx, dy, w, h, cyclic);
+            if (n < 0 || v[n] == obsColor || n == c) return -1;
+            if (n == goal) return (steps << 32) | n;
+            x = n % w;
+            y = n / w;
+            if (forced(x, y, dx, dy)) return (steps << 32) | n;
+            if (diagonal && (jump(n, DIR[dx + 1][1]) >= 0 || jump(n, DIR[1][dy + 1]) >= 0)) return (steps << 32) | n;
+        }
+    }
+
+    /**
+     * The JPS+ preprocessing of a map for a given obstacle color and cyclic flag: for every pixel i and
+     * direction d, dist[d][i] is the number of steps to the next jump point (&gt; 0), or minus the number of
+     * free steps before an obstacle or the edge (&lt;= 0) - where the goal is not a jump point yet.
+     * It is only valid as long as the map does not change (Map rebuilds it after any change).
+     * Takes 8 ints per pixel.
+     */
+    public static final class JumpTable {
+
+        private final int w, h, obsColor;
+        private final boolean cyclic;
+        private final int[][] dist = new int[8][];
+
+        private JumpTable(int w, int h, int obsColor, boolean cyclic)
+        {
+            this.w = w;
+            this.h = h;
+            this.obsColor = obsColor;
+            this.cyclic = cyclic;
+        }
+
+        /**
+         * Precomputes the jump distances of a map in O(w*h) per direction.
+         */
+        public static JumpTable build(int[] v, int w, int h, int obsColor, boolean cyclic)
+        {
+            JumpTable ans = new JumpTable(w, h, obsColor, cyclic);
+            JumpPointSearch jps = new JumpPointSearch(v, w, h, obsColor, cyclic, 0, 0, null);
+            int[] chain = new int[w * h];
+            boolean[] done = new boolean[w * h];
+            for (int d = 0; d < 8; d++) // the straight directions first: the diagonal jumps stop where they find something
+            {
+                ans.dist[d] = ans.buildDirection(jps, v, d, chain, done);
+            }
+            return ans;
+        }
+
+        /**
+         * Computes the distances of one direction by following the lines of pixels (which end at the edge,
+         * or are cycles on a cyclic map) backwards from where their value is known.
+         */
+        private int[] buildDirection(JumpPointSearch jps, int[] v, int d, int[] chain, boolean[] done)
+        {
+            final int dx = GridBfs.DX[d], dy = GridBfs.DY[d];
+            final boolean diagonal = dx != 0 && dy != 0;
+            // a cyclic line comes back to its start after period steps
+            final int period = !diagonal ? (dx != 0 ? w : h) : w / gcd(w, h) * h;
+            final int[] sx = diagonal ? dist[DIR[dx + 1][1]] : null, sy = diagonal ? dist[DIR[1][dy + 1]] : null;
+            final int[] ans = new int[w * h];
+            java.util.Arrays.fill(done, false);
+            for (int i = 0; i < ans.length; i++)
+            {
+                if (done[i]) continue;
+                if (v[i] == obsColor)
+                {
+                    done[i] = true;
+                    continue;
+                }
+                // walk forward until the value of the last pixel of the chain is known
+                int len = 0, c = i, last;
+                while (true) {
+                    chain[len++] = c;
+                    done[c] = true;
+                    int n = GridBfs.neighbor(c % w, c / w, dx, dy, w, h, cyclic);
+                    if (n < 0 || v[n] == obsColor) { last = 0; break; }
+                    int nx = n % w, ny = n / w;
+                    if (jps.forced(nx, ny, dx, dy) || (diagonal && (sx[n] > 0 || sy[n] > 0))) { last = 1; break; }
+                    if (n == i) { last = Integer.MIN_VALUE; break; } // a cycle without any jump point
+                    if (done[n]) { last = ans[n] > 0 ? ans[n] + 1 : ans[n] - 1; break; }
+                    c = n;
+                }
+                if (last == Integer.MIN_VALUE)
+                {
+                    for (int k = 0; k < len; k++) ans[chain[k]] = -(period - 1);
+                    continue;
+                }
+                ans[chain[len - 1]] = last;
+                for (int k = len - 2; k >= 0; k--)
+                {
+                    int next = ans[chain[k + 1]];
+                    ans[chain[k]] = next > 0 ? next + 1 : next - 1;
+                }
+                for (int k = 0; k < len; k++)
+                {
+                    if (ans[chain[k]] >= period) ans[chain[k]] = -(period - 1); // the jump point is the pixel itself
+                }
+            }
+            return ans;
+        }
+
+        /**
+         * @return true iff this table was built for a w*h map with the given obsColor and cyclic flag.
+         */
+        public boolean isFor(int w, int h, int obsColor, boolean cyclic)
+        {
+            return this.w == w && this.h == h && this.obsColor == obsColor && this.cyclic == cyclic;
+        }
+
+        private static int gcd(int a, int b)
+        {
+            return b == 0 ? a : gcd(b, a % b);
+        }
+
+        /**
+         * The O(1) jump of JPS+: the precomputed jump point, unless the goal comes first - on the line for a
+         * straight move, or (for a diagonal move) the pixel of the line in the goal's row or column, from which
+         * the goal may be reached straight on.
+         * @return the jump point and its distance packed as (steps << 32) | index, or -1 if there is none.
+         */
+        private long jump(JumpPointSearch s, int c, int d)
+        {
+            final int dx = GridBfs.DX[d], dy = GridBfs.DY[d];
+            final int x = c % w, y = c / w, reach = dist[d][c];
+            final int free = reach > 0 ? reach : -reach; // the number of steps which may be taken
+            int toX = ahead(x, s.gx, dx, w), toY = ahead(y, s.gy, dy, h); // steps to the goal's column / row
+            long steps;
+            if (dx == 0) steps = x == s.gx ? toY : Integer.MAX_VALUE;
+            else if (dy == 0) steps = y == s.gy ? toX : Integer.MAX_VALUE;
+            else steps = Math.min(toX, toY);
+            if (steps <= free) return (steps << 32) | offset(x, y, (int) steps, dx, dy);
+            if (reach <= 0) return -1;
+            return ((long) reach << 32) | offset(x, y, reach, dx, dy);
+        }
+
+        /**
+         * @return the index of the pixel k steps from (x,y) in direction (dx,dy) (wrapped around if cyclic).
+         */
+        private int offset(int x, int y, int k, int dx, int dy)
+        {
+            int nx = x + k * dx, ny = y + k * dy;
+            if (cyclic)
+            {
+                nx = Math.floorMod(nx, w);
+                ny = Math.floorMod(ny, h);
+            }
+            return ny * w + nx;
+        }
+
+        /**
+         * @return the number of steps (&gt; 0) in direction dir from coordinate a to coordinate b on an axis of
+         * the given size (going around if cyclic), or Integer.MAX_VALUE if it is never reached.
+         */
+        private int ahead(int a, int b, int dir, int size)
+        {
+            if (dir == 0) return Integer.MAX_VALUE;
+            int ans = (b - a) * dir;
+            if (!cyclic) return ans > 0 ? ans : Integer.MAX_VALUE;
+            ans %= size;
+            if (ans < 0) ans += size;
+            return ans == 0 ? size : ans;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+import java.util.Arrays;
+
+/**
+ * ALT preprocessing (A*, Landmarks, Triangle inequality - Goldberg &amp; Harrelson, "Computing the Shortest Path:
+ * A* Search Meets Graph Theory", 2005) of a flat row-major int[] map of w*h pixels, for Map.shortestPath with
+ * PathEngine.ALT: the BFS distances (unit steps, 4- or 8-connectivity, avoiding obsColor) from K landmark pixels.
+ * For any landmark L, the triangle inequality gives d(n,t) &gt;= |d(L,t) - d(L,n)|, so the largest of these
+ * bounds (and of the geometric distance) is a consistent A* heuristic - exact paths, and on maze-like maps a far
+ * tighter one than the geometric distance, which does not see the walls.
+ * The landmarks are chosen one after the other as the free pixel farthest from the ones chosen so far
+ * (a pixel no landmark reaches first: every component gets a landmark, while there are enough of them).
+ * The distances are stored interleaved (the K distances of a pixel side by side, so a heuristic reads a single
+ * cache line) as unsigned 16 bit values: UNREACHED for obstacles and pixels the landmark does not reach,
+ * and distances beyond CAP clamped to CAP - which only loosens the bounds, they stay admissible and consistent.
+ * Takes K shorts per pixel; it is only valid as long as the map does not change (Map rebuilds it after any change).
+ */
+public final class Landmarks {
+
+    /** The number of landmarks Map uses unless told otherwise. */
+    public static final int DEFAULT_COUNT = 8;
+
+    private static final int UNREACHED = 0xFFFF; // an obstacle, or a pixel the landmark does not reach
+    private static final int CAP = 0xFFFE; // the largest stored distance
+
+    private final int w, h, obsColor, connectivity;
+    private final boolean cyclic;
+    private final int[] landmarks; // the packed y*w+x indices of the landmarks
+    private final short[] dist; // dist[i*K + k]: the distance from landmark k to pixel i (unsigned)
+
+    private Landmarks(int w, int h, int obsColor, boolean cyclic, int connectivity, int[] landmarks, short[] dist)
+    {
+        this.w = w;
+        this.h = h;
+        this.obsColor = obsColor;
+        this.cyclic = cyclic;
+        this.connectivity = connectivity;
+        this.landmarks = landmarks;
+        this.dist = dist;
+    }
+
+    /**
+     * Chooses (at most) count landmarks and computes their distances: count+1 BFS over the map.
+     * @param connectivity 4 or 8 (the moves of the searches which will use the landmarks).
+     * @param count the number of landmarks (fewer on a map with fewer free pixels).
+     */
+    public static Landmarks build(int[] v, int w, int h, int obsColor, boolean cyclic, int connectivity, int count)
+    {
+        if (connectivity != 4 && connectivity != 8)
+        {
+            throw new IllegalArgumentException("connectivity must be 4 or 8, got " + connectivity);
+        }
+        if (count <= 0)
+        {
+            throw new IllegalArgumentException("count must be positive, got " + count);
+        }
+        if ((long) w * h * count > Integer.MAX_VALUE - 8)
+        {
+            throw new IllegalArgumentException("too many landmark distances: " + w + "*" + h + "*" + count);
+        }
+        final int n = w * h, dirs = connectivity;
+        int first = 0;
+        while (first < n && v[first] == obsColor) first++;
+        if (first == n) // no free pixel: no landmark
+        {
+            return new Landmarks(w, h, obsColor, cyclic, connectivity, new int[0], new short[0]);
+        }
+
+        final int[] d = new int[n], queue = new int[n];
+        final int[] nearest = new int[n]; // the distance from the nearest landmark so far (MAX_VALUE: none reaches)
+        Arrays.fill(nearest, Integer.MAX_VALUE);
+        bfs(v, w, h, first, obsColor, cyclic, dirs, d, queue);
+        int[] chosen = new int[count];
+        short[] dist = new short[n * count];
+        int k = 0;
+        for (int next = farthest(v, d, obsColor, null); k < count; k++)
+        {
+            if (k > 0 && nearest[next] == 0) break; // every free pixel is a landmark already
+            chosen[k] = next;
+            bfs(v, w, h, next, obsColor, cyclic, dirs, d, queue);
+            for (int i = 0, j = k; i < n; i++, j += count)
+            {
+                int di = d[i];
+                dist[j] = (short) (di < 0 ? UNREACHED : Math.min(di, CAP));
+                if (di >= 0 && di < nearest[i]) nearest[i] = di;
+            }
+            next = farthest(v, nearest, obsColor, nearest);
+        }
+        if (k < count) // fewer landmarks than asked for: drop the unused slots of the interleaved distances
+        {
+            chosen = Arrays.copyOf(chosen, k);
+            short[] packed = new short[n * k];
+            for (int i = 0; i < n; i++)
+            {
+                System.arraycopy(dist, i * count, packed, i * k, k);
+            }
+            dist = packed;
+        }
+        return new Landmarks(w, h, obsColor, cyclic, connectivity, chosen, dist);
+    }
+
+    /**
+     * @return the free pixel with the largest value of d (the first one on ties); with nearest, a pixel which no
+     * landmark reaches counts as the farthest, and with d = the distances of one BFS, the unreached pixels (-1) lose.
+     */
+    private static int farthest(int[] v, int[] d, int obsColor, int[] nearest)
+    {
+        int best = -1;
+        long bestValue = -2;
+        for (int i = 0; i < d.length; i++)
+        {
+            if (v[i] == obsColor) continue;
+            long value = nearest != null && nearest[i] == Integer.MAX_VALUE ? Long.MAX_VALUE : d[i];
+            if (value > bestValue)
+            {
+                bestValue = value;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * BFS (the first dirs directions of GridBfs: 4 or 8) from pixel s into d: -1 for obstacles and unreached pixels.
+     */
+    private static void bfs(int[] v, int w, int h, int s, int obsColor, boolean cyclic, int dirs, int[] d, int[] q)
+    {
+        Arrays.fill(d, -1);
+        int head = 0, tail = 0;
+        d[s] = 0;
+        q[tail++] = s;
+        while (head < tail) {
+            int cur = q[head++], x = cur % w, y = cur / w, next = d[cur] + 1;
+            for (int dir = 0; dir < dirs; dir++) {
+                int ni = GridBfs.neighbor(x, y, GridBfs.DX[dir], GridBfs.DY[dir], w, h, cyclic);
+                if (ni < 0 || d[ni] >= 0 || v[ni] == obsColor) continue;
+                d[ni] = next;
+                q[tail++] = ni;
+            }
+        }
+    }
+
+    /**
+     * @return true iff these landmarks were built for a w*h map with these parameters (8-connectivity).
+     */
+    public boolean isFor(int w, int h, int obsColor, boolean cyclic)
+    {
+        return this.w == w && this.h == h && this.obsColor == obsColor && this.cyclic == cyclic && connectivity == 8;
+    }
+
+    /**
+     * @return the number of landmarks.
+     */
+    public int getCount()
+    {
+        return landmarks.length;
+    }
+
+    /**
+     * @return landmark k.
+     */
+    public Pixel2D getLandmark(int k)
+    {
+        return new Index2D(landmarks[k] % w, landmarks[k] / w);
+    }
+
+    /**
+     * @return the connectivity of the distances (4 or 8).
+     */
+    public int getConnectivity()
+    {
+        return connectivity;
+    }
+
+    ////////////////////// Search /////////////////////////
+    /**
+     * A* shortest path avoiding obsColor over the moves of these landmarks (4- or 8-connectivity, unit steps),
+     * guided by the landmark bounds - as GridBfs.shortestPathAStar: the heuristic is consistent and a move changes
+     * it by at most one, so a child's f is within [f, f+2] of its parent's and the queue is 3 buckets of stacks.
+     * A landmark which reaches exactly one of p1 and p2 proves there is no path, without searching.
+     * @param v the map these landmarks were built for.
+     * @return the path from p1 to p2 (inclusive), or null if there is none.
+     */
+    public Pixel2D[] shortestPath(int[] v, Pixel2D p1, Pixel2D p2)
+    {
+        if (v.length != w * h)
+        {
+            throw new IllegalArgumentException("the landmarks were built for another map");
+        }
+        if (p1 == null || p2 == null) return null;
+        final int sx = p1.getX(), sy = p1.getY(), ex = p2.getX(), ey = p2.getY();
+        if (sx < 0 || sx >= w || sy < 0 || sy >= h) return null;
+        if (ex < 0 || ex >= w || ey < 0 || ey >= h) return null;
+        final int start = sy * w + sx, goal = ey * w + ex;
+        if (v[start] == obsColor || v[goal] == obsColor) return null;
+        if (start == goal) return new Pixel2D[]{p1};
+
+        // the landmarks which reach the goal, and their distances to it
+        final int k = landmarks.length;
+        final int[] active = new int[k], toGoal = new int[k];
+        int m = 0;
+        for (int l = 0; l < k; l++)
+        {
+            int s = dist[start * k + l] & 0xFFFF, t = dist[goal * k + l] & 0xFFFF;
+            if ((s == UNREACHED) != (t == UNREACHED)) return null; // p1 and p2 are in different components
+            if (t == UNREACHED) continue;
+            active[m] = l;
+            toGoal[m++] = t;
+        }
+
+        final int OPEN = 0, CLOSED = 1;
+        BfsWorkspace ws = BfsWorkspace.get();
+        ws.begin(w * h, 2);
+        final int[] parent = ws.parent, cost = ws.cost;
+        final int[] size = new int[3]; // the number of entries in each bucket
+        int f = heuristic(start, ex, ey, active, toGoal, m); // the smallest f in the queue
+        ws.visit(start, OPEN);
+        cost[start] = 0;
+        if (ws.buckets[f % 3].length == 0) ws.growBucket(f % 3, 0);
+        ws.buckets[f % 3][size[f % 3]++] = start;
+        int pending = 1;
+        boolean found = false;
+        while (pending > 0 && !found) {
+            while (size[f % 3] == 0) f++;
+            int cur = ws.buckets[f % 3][--size[f % 3]];
+            pending--;
+            if (ws.sideOf(cur) == CLOSED || cost[cur] + heuristic(cur, ex, ey, active, toGoal, m) != f) continue; // stale
+            if (cur == goal) {
+                found = true;
+                break;
+            }
+            ws.visit(cur, CLOSED);
+            int x = cur % w, y = cur / w, g = cost[cur] + 1;
+            for (int d = 0; d < connectivity; d++) {
+                int ni = GridBfs.neighbor(x, y, GridBfs.DX[d], GridBfs.DY[d], w, h, cyclic);
+                if (ni < 0 || v[ni] == obsColor) continue;
+                int side = ws.sideOf(ni);
+                if (side == CLOSED || (side == OPEN && cost[ni] <= g)) continue;
+                ws.visit(ni, OPEN);
+                cost[ni] = g;
+                parent[ni] = cur;
+                int b = (g + heuristic(ni, ex, ey, active, toGoal, m)) % 3;
+                if (size[b] == ws.buckets[b].length) ws.growBucket(b, size[b]);
+                ws.buckets[b][size[b]++] = ni;
+                pending++;
+            }
+        }
+        return found ? GridBfs.buildPath(parent, start, goal, w) : null;
+    }
+
+    /**
+     * @return the lower bound on the steps from pixel i to (ex,ey): the geometric distance (octile, or Manhattan for
+     * 4-connectivity) or the largest |d(L,goal) - d(L,i)| of the m active landmarks, whichever is larger.
+     */
+    private int heuristic(int i, int ex, int ey, int[] active, int[] toGoal, int m)
+    {
+        int x = i % w, y = i / w, ans;
+        if (connectivity == 8)
+        {
+            ans = GridBfs.octile(x, y, ex, ey, w, h, cyclic);
+        }
+        else
+        {
+            int dx = Math.abs(x - ex), dy = Math.abs(y - ey);
+            ans = cyclic ? Math.min(dx, w - dx) + Math.min(dy, h - dy) : dx + dy;
+        }
+        final int base = i * landmarks.length;
+        for (int j = 0; j < m; j++)
+        {
+            int bound = Math.abs((dist[base + active[j]] & 0xFFFF) - toGoal[j]);
+            if (bound > ans) ans = bound;
+        }
+        return ans;
+    }
+}
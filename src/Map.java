@@ -1,17 +1,17 @@
 import java.awt.*;
 import java.io.Serializable;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 /**
- * This class represents a 2D map (int[w][h]) as a "screen" or a raster matrix or maze over integers.
+ * This class represents a 2D map (w*h, stored as a flat row-major int[]) as a "screen" or a raster matrix or maze over integers.
  * This is the main class needed to be implemented.
  *
  * @author boaz.benmoshe
  *
  */
-public class Map implements Map2D, Serializable{
+public class Map extends AbstractMap2D implements Map2D, Serializable{
 
     ////////////////////// Constructors ///////////////////////
 	/**
@@ -20,9 +20,18 @@ public class Map implements Map2D, Serializable{
 	 * @param h
 	 * @param v
 	 */
-    private int w;
-    private int h;
-    private int v[][]; // 2D array to hold the map values meaning w x h
+    private int v[]; // flat row-major array holding the map values: pixel (x,y) is at v[y*w+x]
+    private PathEngine pathEngine = PathEngine.BFS; // the default engine of shortestPath
+    private DistanceEngine distanceEngine = DistanceEngine.BFS; // the default engine of allDistance
+    private transient int modCount; // bumped on every change of the pixels (invalidates the cached jump table)
+    private transient JumpPointSearch.JumpTable jumpTable; // JPS+ preprocessing, built on demand
+    private transient int jumpTableModCount;
+    private transient Landmarks landmarks; // ALT preprocessing, built on demand (or by buildLandmarks)
+    private transient int landmarksModCount;
+    private transient CorridorGraph corridors; // the contracted corridors, built on demand
+    private transient int corridorsModCount;
+    private transient ReachabilityIndex reachability; // the index of the last isReachable parameters, kept up to date
+    private transient ArrayList<MapListener> listeners; // null while there are none
 	public Map(int w, int h, int v)
     {
         init(w, h, v);
@@ -48,93 +57,72 @@ public class Map implements Map2D, Serializable{
     {
 		init(data);
 	}
-	@Override
-	public void init(int w, int h, int v) { //set width, height, value and fill in values with v
+
+    /**
+     * Wraps an already filled flat row-major array (no copy) - used by the algorithms
+     * (of this and the other Map2D implementations) to hand back their result maps
+     * without going through a 2D array.
+     * @param w the width of the map.
+     * @param h the height of the map.
+     * @param data flat array of length w*h, pixel (x,y) at data[y*w+x].
+     */
+    Map(int w, int h, int[] data)
+    {
         this.w = w;
         this.h = h;
-        this.v = new int[h][w];
-        for (int i = 0; i < h; i++) {
-            for (int j = 0; j < w; j++) {
-                this.v[i][j] = v;
-            }
-        }
+        this.v = data;
+    }
+	@Override
+	public void init(int w, int h, int v) { //set width, height, value and fill in values with v
+        int[] data = new int[w * h];
+        Arrays.fill(data, v);
+        replace(w, h, data);
 
 	}
 	@Override
 	public void init(int[][] arr) {
-        if(arr==null || arr.length==0)
-        {
-            throw new IllegalArgumentException("arr can't be null or empty");
-        }
-        int rowLength = arr[0].length;
-        for (int i = 1; i < arr.length; i++) {
-            if(arr[i].length != rowLength)
-            {
-                throw new IllegalArgumentException("arr must be a non-ragged 2D array");
-            }
-        }
-        this.w = arr.length; // get width
-        this.h = arr[0].length; // get height from first row
-        this.v = new int[h][w]; // make new 2D array
-        for (int i = 0; i < h; i++) {
-            for (int j = 0; j < w; j++) {
-                this.v[i][j] = arr[i][j]; //fill in values with deep copy
-            }
+        int rowLength = checkArray(arr); // throws if arr is null, empty or ragged
+        // arr is row-major (arr[y][x]), the same layout getMap() returns and GUI.loadMap() builds
+        int h = arr.length, w = rowLength; // height from the number of rows, width from the first row
+        int[] data = new int[w * h]; // make new flat array
+        for (int y = 0; y < h; y++) {
+            System.arraycopy(arr[y], 0, data, y * w, w); //fill in values with deep copy, one row at a time
         }
+        replace(w, h, data);
 
 	}
 
+    /**
+     * Replaces the whole map by a w*h flat row-major array (no copy), then notifies the listeners
+     * (after the new pixels are in place, as every bulk change).
+     */
+    private void replace(int w, int h, int[] data)
+    {
+        this.w = w;
+        this.h = h;
+        this.v = data;
+        modCount++;
+        fireMapChanged();
+    }
+
     @Override
 	public int[][] getMap() { // return a deep copy of the 2D array
 		int[][] ans = new int[h][w];
-        for (int i = 0; i < this.h; i++) {
-            for (int j = 0; j < this.w; j++) {
-                ans[i][j]=this.v[i][j] ;
-            }
+        for (int y = 0; y < this.h; y++) {
+            System.arraycopy(this.v, y * w, ans[y], 0, w);
         }
 		return ans;
 	}
-	@Override
-	public int getWidth()
-    {
-        return this.w;
-    }
-	@Override
-	public int getHeight()
-    {
-        return this.h;
-    }
 	@Override
 	public int getPixel(int x, int y) {
         checkBounds(x, y);
-        return v[y][x];
+        return v[y * w + x];
     }
-	@Override
-	public int getPixel(Pixel2D p) {
-        return getPixel(p.getX(), p.getY());
-	}
 	@Override
 	public void setPixel(int x, int y, int v) {
         checkBounds(x, y);
-        this.v[y][x] = v;
+        put(x, y, v);
 
-    }
-	@Override
-	public void setPixel(Pixel2D p, int v) {
-        setPixel(p.getX(), p.getY(), v);
-
-	}
-
-    @Override
-    public boolean isInside(Pixel2D p) {
-        int x= p.getX();
-        int y= p.getY();
-        return inBounds(x, y);
-    }
-
-    @Override
-    public boolean sameDimensions(Map2D p) {
-        return (p!=null && this.getWidth() == p.getWidth() && this.getHeight() == p.getHeight());
     }
 
     @Override
@@ -143,26 +131,37 @@ public class Map implements Map2D, Serializable{
         {
             throw new IllegalArgumentException("Maps must have the same dimensions to add");
         }
-        for (int i = 0; i < this.h; i++)
+        if (p instanceof Map) // same layout: walk both flat arrays in a single pass
         {
-            for (int j = 0; j < this.w; j++)
+            int[] other = ((Map) p).v;
+            for (int i = 0; i < this.v.length; i++)
             {
-                this.v[i][j] += p.getPixel(j, i); // add corresponding pixels
+                this.v[i] += other[i]; // add corresponding pixels
             }
         }
-
+        else
+        {
+            for (int y = 0; y < this.h; y++)
+            {
+                int row = y * this.w;
+                for (int x = 0; x < this.w; x++)
+                {
+                    this.v[row + x] += p.getPixel(x, y); // add corresponding pixels
+                }
+            }
+        }
+        modCount++;
+        fireMapChanged();
     }
 
     @Override
     public void mul(double scalar) {
-        for (int i = 0; i < this.h; i++)
+        for (int i = 0; i < this.v.length; i++)
         {
-            for (int j = 0; j < this.w; j++)
-            {
-                this.v[i][j] = (int) (this.v[i][j] * scalar); // multiply each pixel by scalar and cast to int
-            }
-
+            this.v[i] = (int) (this.v[i] * scalar); // multiply each pixel by scalar and cast to int
         }
+        modCount++;
+        fireMapChanged();
     }
 
     @Override
@@ -178,14 +177,17 @@ public class Map implements Map2D, Serializable{
         int newW = Math.max(1, (int) Math.round(w * sx));
         int newH = Math.max(1, (int) Math.round(h * sy));
 
-        // 3. Array Allocation: Create a new 2D array for the resized map data.
-        int[][] out = new int[newH][newW];
+        // 3. Array Allocation: Create a new flat array for the resized map data.
+        int[] out = new int[newW * newH];
 
         /* * Resampling Loop:
          * We iterate over every cell in the NEW map and determine which
          * original cell from the OLD map it should "borrow" its value from.
          */
         for (int ny = 0; ny < newH; ny++) {
+            int oy = Math.min(h - 1, (int) Math.round(ny / sy)); // source row is the same for the whole target row
+            int srcRow = oy * w;
+            int dstRow = ny * newW;
             for (int nx = 0; nx < newW; nx++) {
 
                 /* * Mapping Inverse Coordinates:
@@ -195,10 +197,9 @@ public class Map implements Map2D, Serializable{
                  * the original array's last index due to rounding.
                  */
                 int ox = Math.min(w - 1, (int) Math.round(nx / sx));
-                int oy = Math.min(h - 1, (int) Math.round(ny / sy));
 
                 //Assignment: Copy the value from the old map to the new map.
-                out[ny][nx] = v[oy][ox];
+                out[dstRow + nx] = v[srcRow + ox];
             }
         }
 
@@ -206,232 +207,51 @@ public class Map implements Map2D, Serializable{
         this.w = newW;
         this.h = newH;
         this.v = out;
-    }
-
-    @Override
-    public void drawCircle(Pixel2D center, double rad, int color) {
-        // Extract center coordinates and round the radius to the nearest integer
-        int cx = center.getX();
-        int cy = center.getY();
-        int r = (int) Math.round(rad);
-        // Validate radius: A circle cannot have a negative radius
-        if (r < 0) {
-            throw new IllegalArgumentException("Radius must be >= 0");
-        }
-        // Special case: If radius is 0, just draw a single point at the center
-        if (r == 0) {
-            setPixel(cx, cy, color);
-        }
-        // Draw circle using Midpoint Circle Algorithm (Bresenham's)
-        if (r > 0) {
-            int y = 0; // Start at the top of the circle
-            int x = r; // Initial X is the radius
-            int err = 1 - x; // Initial decision parameter (error offset)
-
-            // The loop continues until the 1/8th arc (octant) is complete
-            while (x >= y)
-            {
-                /* * Apply 8-way symmetry:
-                 * A circle is symmetric across 8 octants. By calculating one point (x, y),
-                 * we can determine 7 other mirrored points instantly.
-                 */
-                setPixel(cx + x, cy + y, color);
-                setPixel(cx + y, cy + x, color);
-                setPixel(cx - y, cy + x, color);
-                setPixel(cx - y, cy - x, color);
-                setPixel(cx - x, cy + y, color);
-                setPixel(cx - x, cy - y, color);
-                setPixel(cx + y, cy - x, color);
-                setPixel(cx + x, cy - y, color);
-
-                y++; // Always move one step in the Y direction
-
-                /* * Error Correction:
-                 * Decide whether to stay at the current X or move inward to stay on the arc.
-                 */
-                if (err < 0)
-                {
-                    // If error is negative, the next pixel is inside the ideal circle boundary
-                    err += ((2 * y) + 1);
-                }
-                else
-                {
-                    // If error is positive, we are too far out; move X one step inward
-                    x--;
-                    err += ((2 * (y - x)) + 1);
-                }
-            }
-        }
-    }
-
-    // 1. Calculate absolute differences and step directions
-    // 2. Initialize error term (err = dx + dy) to manage the decision between X and Y steps
-    // 3. Loop until the current coordinates (x0, y0) match the target (x1, y1)
-    // 4. In each step:
-    //    - If 2*err >= dy, move in the X direction
-    //    - If 2*err <= dx, move in the Y direction
-    //    - This ensures the line stays as close as possible to the ideal mathematical path.
-    @Override
-    public void drawLine(Pixel2D p1, Pixel2D p2, int color) {
-        int x1 = p1.getX(), y1 = p1.getY();
-        int x2 = p2.getX(), y2 = p2.getY();
-        int dx = Math.abs(x2 - x1);
-        int sx = x1 < x2 ? 1 : -1; // if x1<x2 then sx=1 else sx=-1
-        int dy = -Math.abs(y2 - y1);
-        int sy = y1 < y2 ? 1 : -1; // if y1<y2 then sy=1 else sy=-1
-        int err = dx + dy;
-        while (true)
-        {
-            setPixel(x1, y1, color);
-            if (x1 == x2 && y1 == y2) // Reached the end point
-                break;
-            int e2 = 2 * err;
-            if (e2 >= dy)
-            {
-                err += dy;
-                x1 += sx;
-            }
-            if (e2 <= dx)
-            {
-                err += dx;
-                y1 += sy;
-            }
-        }
-    }
-
-    @Override
-    public void drawRect(Pixel2D p1, Pixel2D p2, int color) {
-        if (p1 == p2) { // If both points are the same, draw a single pixel
-            setPixel(p1.getX(), p1.getY(), color);
-        } else {
-            int x1 = Math.min(p1.getX(), p2.getX()); // Left x boundary of both points
-            int y1 = Math.min(p1.getY(), p2.getY()); // Top y boundary of both points
-            int x2 = Math.max(p1.getX(), p2.getX()); // Right x boundary of both points
-            int y2 = Math.max(p1.getY(), p2.getY()); // Bottom y boundary of both points
-            for (int x = x1; x <= x2; x++) { // Draw top and bottom edges
-                setPixel(x, y1, color);
-                setPixel(x, y2, color);
-            }
-            for (int y = y1; y <= y2; y++) { // Draw left and right edges
-                setPixel(x1, y, color);
-                setPixel(x2, y, color);
-            }
-        }
+        modCount++;
+        fireMapChanged();
     }
 
     @Override
     public boolean equals(Object ob)
     {
-        boolean ans = true; // assume equal unless proven otherwise
+        boolean ans = false; // assume not equal unless proven otherwise
         if(ob instanceof Map) // check if ob is instance of Map
         {
             Map map = (Map)ob;
             if(map.w == this.w && map.h == this.h) // check dimensions
             {
-                for (int y = 0; y < this.h; y++)
-                {
-                    for (int x = 0; x < this.w; x++)
-                    {
-                        if (this.v[y][x] != map.v[y][x]) // compare each pixel value
-                        {
-                            return false;
-                        }
-                    }
-                }
-            }
-            else
-            {
-                return  false;
+                ans = Arrays.equals(this.v, map.v); // compare every pixel value in one pass
             }
         }
         else
         {
-            return false;
+            ans = super.equals(ob); // other Map2D storage: compare pixel by pixel
         }
         return ans;
     }
 
+    @Override
+    public int hashCode()
+    {
+        return 31 * (31 * w + h) + Arrays.hashCode(v); // consistent with equals: dimensions + pixel values
+    }
+
     @Override
     /**
      * Fills this map with the new color (new_v) starting from p.
-     * Uses BFS (Breadth-First Search) algorithm with a Queue to avoid StackOverflow.
+     * Uses a scanline (span) fill with an explicit stack of seeds to avoid StackOverflow:
+     * each seed is extended left and right over its run of the old color, the whole run is recolored,
+     * and only the first pixel of every old color run directly above/below it is pushed as a new seed.
+     * Recolored pixels mark themselves, so no visited matrix is needed.
      */
         public int fill(Pixel2D xy, int new_v, boolean cyclic) {
-            int ans = 0;
-            // Initialize dimensions and starting coordinates
-            final int H = v.length;
-            final int W = v[0].length;
-            final int fx = xy.getX(); // starting x coordinate
-            final int fy = xy.getY(); // starting y coordinate
-
-            // Initial boundary check: Ensure the starting point is within the map
-            if (fy < 0 || fy >= v[0].length || fx < 0 || fx >= v.length)
-            {
-                return ans;
-            }
-
-            // Identify the target color to be replaced
-            final int old = v[fy][fx];
-
-            // Optimization: If the target color is already the new color, no work is needed
-            if (old == new_v)
+            // The span fill itself is shared with the other grid searches (see GridBfs.fill)
+            int ans = GridBfs.fill(v, w, h, xy.getX(), xy.getY(), new_v, cyclic);
+            if (ans > 0)
             {
-                return ans;
+                modCount++;
+                fireMapChanged();
             }
-
-            // Setup BFS structures: 'visited' array prevents infinite loops
-            // 'q' (Queue) stores pixels that are waiting to have their neighbors checked
-            final boolean[][] visited = new boolean[H][W];
-            final ArrayDeque<int[]> q = new ArrayDeque<>();
-
-            // Start the process from the initial pixel
-            visited[fy][fx] = true;
-            q.add(new int[]{fx, fy});
-
-            // Define 4-way connectivity (Right, Left, Down, Up)
-            final int[][] directions = {{ 1,  0}, {-1,  0}, { 0,  1}, { 0, -1}};
-
-            // Main BFS Loop: Continue as long as there are connected pixels to process
-            while (!q.isEmpty()) {
-                int[] cur = q.removeFirst(); // Get the next pixel from the queue
-                int x = cur[0];
-                int y = cur[1];
-
-                // Update current pixel color and increment the counter
-                if (v[y][x] == old) {
-                    v[y][x] = new_v;
-                    ans++;
-                }
-
-                // Check all 4 neighbors
-                for (int[] d : directions) // For each direction
-                {
-                    int nx = x + d[0]; // Neighbor's x coordinate
-                    int ny = y + d[1]; // Neighbor's y coordinate
-
-                    // Handle Map Topology: Cyclic vs. Standard Bounded
-                    if (cyclic)
-                    {
-                        // Modulo math ensures that going off-edge wraps around to the opposite side
-                        // Added '+ W' handles negative results from nx % W
-                        nx = ((nx % W) + W) % W;
-                        ny = ((ny % H) + H) % H;
-                    } else
-                    {
-                        // Standard bounds check: Skip the neighbor if it's outside the map
-                        if (nx < 0 || nx >= W || ny < 0 || ny >= H)
-                            continue;
-                    }
-
-                    // If neighbor has the original color and hasn't been visited yet, add to queue
-                    if (!visited[ny][nx] && v[ny][nx] == old)
-                    {
-                        visited[ny][nx] = true; // Mark as visited immediately to avoid duplicate entries
-                        q.add(new int[]{nx, ny});
-                    }
-                }
-            }
-            // Return total number of pixels that were changed
             return ans;
         }
 
@@ -443,263 +263,413 @@ public class Map implements Map2D, Serializable{
      * * https://en.wikipedia.org/wiki/Breadth-first_search
      */
     public Pixel2D[] shortestPath(Pixel2D p1, Pixel2D p2, int obsColor, boolean cyclic) {
-        Pixel2D[] ans = null; // Result array
+        return shortestPath(p1, p2, obsColor, cyclic, pathEngine);
+    }
 
-        // Basic validation: Ensure start and end points exist
-        if (p1 == null || p2 == null)
-        {
-            return null;
+    /**
+     * Computes the shortest valid path between p1 and p2 (see shortestPath) with the given search engine.
+     * All the engines return a path with the same (minimal) number of steps.
+     * @param engine the search algorithm to use.
+     * @return the shortest path as an array of consecutive pixels, if none - returns null.
+     */
+    public Pixel2D[] shortestPath(Pixel2D p1, Pixel2D p2, int obsColor, boolean cyclic, PathEngine engine) {
+        ReachabilityIndex r = reachability;
+        if (r != null && r.getObsColor() == obsColor && r.isCyclic() == cyclic && !r.needsRebuild()
+                && !r.isReachable(p1, p2)) {
+            return null; // no path: don't flood p1's whole component to find out
+        }
+        switch (engine) {
+            case BIDIRECTIONAL:
+                // BFS from both ends, joined where the frontiers meet (see GridBfs.shortestPathBidirectional)
+                return GridBfs.shortestPathBidirectional(v, w, h, p1, p2, obsColor, cyclic);
+            case ASTAR:
+                // best first search towards p2 with a 3 bucket priority queue (see GridBfs.shortestPathAStar)
+                return GridBfs.shortestPathAStar(v, w, h, p1, p2, obsColor, cyclic);
+            case JPS:
+                // A* over jump points only (see JumpPointSearch)
+                return JumpPointSearch.shortestPath(v, w, h, p1, p2, obsColor, cyclic, null);
+            case JPS_PLUS:
+                return JumpPointSearch.shortestPath(v, w, h, p1, p2, obsColor, cyclic, jumpTable(obsColor, cyclic));
+            case ALT:
+                // A* with the triangle inequality bounds of the landmark distances (see Landmarks)
+                return landmarks(obsColor, cyclic, Landmarks.DEFAULT_COUNT).shortestPath(v, p1, p2);
+            case CORRIDOR:
+                // A* over the junctions and dead ends, walking the corridors only to expand the path (see CorridorGraph)
+                return corridors(obsColor, cyclic).shortestPath(v, p1, p2);
+            case DIRECTION_OPTIMIZING:
+                // top-down or bottom-up BFS layers (see DirectionOptimizingBfs.shortestPath)
+                return DirectionOptimizingBfs.shortestPath(v, w, h, p1, p2, obsColor, cyclic);
+            default:
+                // 8-way BFS over packed y*W+x indices, with a primitive queue, a single parent-index array
+                // and generation stamped visited marks from the per-thread BfsWorkspace (see GridBfs.shortestPath)
+                return GridBfs.shortestPath(v, w, h, p1, p2, obsColor, cyclic);
         }
+    }
+
+    /**
+     * Computes the shortest paths of a batch of queries on the common ForkJoinPool
+     * (see shortestPaths(queries, pool)).
+     * @param queries the queries.
+     * @return the path of each query, in the order of queries (null where there is none).
+     */
+    public Pixel2D[][] shortestPaths(List<PathQuery> queries) {
+        return shortestPaths(queries, ForkJoinPool.commonPool());
+    }
 
-        final int H = v.length;
-        final int W = v[0].length;
-        final int sx = p1.getX(); // start x coordinate
-        final int sy = p1.getY(); // start y coordinate
-        final int ex = p2.getX(); // end x coordinate
-        final int ey = p2.getY(); // end y coordinate
+    /**
+     * Computes the shortest paths of a batch of queries: the queries with the same p1, obsColor and cyclic
+     * share a single BFS (which stops once all their p2 are reached), and the groups run in parallel on the pool.
+     * Each path is the one shortestPath(p1, p2, obsColor, cyclic, PathEngine.BFS) returns.
+     * The map must not change while the batch runs.
+     * @param queries the queries.
+     * @param pool the pool which runs the groups.
+     * @return the path of each query, in the order of queries (null where there is none).
+     */
+    public Pixel2D[][] shortestPaths(List<PathQuery> queries, ForkJoinPool pool) {
+        return PathBatch.shortestPaths(v, w, h, queries, pool);
+    }
 
-        // Boundary checks: Ensure coordinates are within the map dimensions
-        if (sx < 0 || sx >= W || sy < 0 || sy >= H)
+    /**
+     * Tells in O(1) whether shortestPath(p1, p2, obsColor, cyclic) finds a path, from the connected components of
+     * the free pixels. The components of the last obsColor and cyclic are cached (see ReachabilityIndex): labeled on
+     * the first query, joined in place when an obstacle is removed, and labeled again after other changes.
+     * While the cached index is up to date, shortestPath with the same parameters uses it to return null at once.
+     * @return true iff there is a path from p1 to p2 avoiding obsColor.
+     */
+    public boolean isReachable(Pixel2D p1, Pixel2D p2, int obsColor, boolean cyclic) {
+        ReachabilityIndex r = reachability;
+        if (r == null || r.getObsColor() != obsColor || r.isCyclic() != cyclic)
         {
-            return null;
+            if (r != null) r.close();
+            r = new ReachabilityIndex(this, obsColor, cyclic);
+            reachability = r;
         }
-        if (ex < 0 || ex >= W || ey < 0 || ey >= H)
+        return r.isReachable(p1, p2);
+    }
+
+    /**
+     * @return the JPS+ jump table of this map for obsColor and cyclic - the cached one, unless the
+     * map changed since it was built or it was built for other parameters.
+     */
+    private JumpPointSearch.JumpTable jumpTable(int obsColor, boolean cyclic)
+    {
+        JumpPointSearch.JumpTable t = jumpTable;
+        if (t == null || jumpTableModCount != modCount || !t.isFor(w, h, obsColor, cyclic))
         {
-            return null;
+            t = JumpPointSearch.JumpTable.build(v, w, h, obsColor, cyclic);
+            jumpTable = t;
+            jumpTableModCount = modCount;
         }
+        return t;
+    }
 
-        // Obstacle check: Path is impossible if start or end is an obstacle
-        if (v[sy][sx] == obsColor || v[ey][ex] == obsColor)
+    /**
+     * Precomputes the ALT landmarks of this map for obsColor and cyclic now (see Landmarks): count BFS over the map,
+     * count shorts per pixel. shortestPath with PathEngine.ALT uses them until the map changes, and then builds
+     * Landmarks.DEFAULT_COUNT new ones on demand.
+     * @param count the number of landmarks - more of them give tighter bounds, at the cost of memory and of the
+     * time of each heuristic.
+     * @return the landmarks.
+     */
+    public Landmarks buildLandmarks(int obsColor, boolean cyclic, int count) {
+        Landmarks l = Landmarks.build(v, w, h, obsColor, cyclic, 8, count);
+        landmarks = l;
+        landmarksModCount = modCount;
+        return l;
+    }
+
+    /**
+     * @return the ALT landmarks of this map for obsColor and cyclic - the cached ones, unless the
+     * map changed since they were built or they were built for other parameters.
+     */
+    private Landmarks landmarks(int obsColor, boolean cyclic, int count)
+    {
+        Landmarks l = landmarks;
+        if (l == null || landmarksModCount != modCount || !l.isFor(w, h, obsColor, cyclic))
         {
-            return null;
+            l = buildLandmarks(obsColor, cyclic, count);
         }
+        return l;
+    }
 
-        // Edge case: Start and end are the same point
-        if (sx == ex && sy == ey)
+    /**
+     * @return the corridor graph of this map for obsColor and cyclic - the cached one, unless the
+     * map changed since it was built or it was built for other parameters.
+     */
+    private CorridorGraph corridors(int obsColor, boolean cyclic)
+    {
+        CorridorGraph g = corridors;
+        if (g == null || corridorsModCount != modCount || !g.isFor(w, h, obsColor, cyclic))
         {
-            return new Pixel2D[]{p1}; // Return array with single point
+            g = CorridorGraph.build(v, w, h, obsColor, cyclic);
+            corridors = g;
+            corridorsModCount = modCount;
         }
+        return g;
+    }
 
-        // Setup BFS Data Structures:
-        // 'visited' prevents re-processing cells (infinite loops)
-        // 'parentX/Y' store the coordinates of the previous cell to reconstruct the path later
-        final boolean[][] visited = new boolean[H][W];
-        final int[][] parentX = new int[H][W];
-        final int[][] parentY = new int[H][W];
+    /**
+     * @return the engine used by shortestPath(p1, p2, obsColor, cyclic).
+     */
+    public PathEngine getPathEngine()
+    {
+        return pathEngine;
+    }
 
-        // Initialize parents with -1 (meaning "no parent yet")
-        for (int y = 0; y < H; y++) {
-            java.util.Arrays.fill(parentX[y], -1); // No parent initialized
-            java.util.Arrays.fill(parentY[y], -1); // No parent initialized
+    /**
+     * Sets the engine used by shortestPath(p1, p2, obsColor, cyclic) of this map.
+     * @param engine the search algorithm to use (not null).
+     */
+    public void setPathEngine(PathEngine engine)
+    {
+        if (engine == null)
+        {
+            throw new IllegalArgumentException("engine can't be null");
         }
+        this.pathEngine = engine;
+    }
+    @Override
+/**
+ * Calculates the shortest distance from a start pixel to all other reachable pixels.
+ * Returns a Map2D where each pixel value represents its distance from the start.
+ */
+    public Map2D allDistance(Pixel2D start, int obsColor, boolean cyclic) {
+        return allDistance(start, obsColor, cyclic, distanceEngine);
+    }
 
-        // Define 8-way movement (Horizontal, Vertical, and Diagonal)
-        final int[][] directions = {{ 1,  0}, {-1,  0}, { 0,  1}, { 0, -1}, { 1,  1}, { 1, -1}, {-1,  1}, {-1, -1}};
-
-        // Queue for BFS: First-In-First-Out (FIFO) ensures shortest path in an unweighted grid
-        final java.util.ArrayDeque<int[]> q = new java.util.ArrayDeque<>();
-        visited[sy][sx] = true;
-        q.addLast(new int[]{sx, sy});
+    /**
+     * Computes the distance of every pixel from start (see allDistance) with the given engine.
+     * All the engines return the same distance map.
+     * @param engine the algorithm to use.
+     * @return the distance map.
+     */
+    public Map2D allDistance(Pixel2D start, int obsColor, boolean cyclic, DistanceEngine engine) {
+        // Unreachable entries are -1, obstacles are marked with obsColor.
+        // The resulting array is wrapped in a Map object without a copy.
+        switch (engine) {
+            case BITSET:
+                // layer by layer over long[] row bitsets (see BitBfs.distances)
+                return new Map(w, h, BitBfs.distances(v, w, h, start.getX(), start.getY(), obsColor, cyclic));
+            case PARALLEL:
+                // layer by layer, the frontier tiles on the common ForkJoinPool (see ParallelBfs.distances)
+                return new Map(w, h, ParallelBfs.distances(v, w, h, start.getX(), start.getY(), obsColor, cyclic));
+            case DIRECTION_OPTIMIZING:
+                // top-down or bottom-up BFS layers (see DirectionOptimizingBfs.distances)
+                return new Map(w, h, DirectionOptimizingBfs.distances(v, w, h, start.getX(), start.getY(), obsColor, cyclic));
+            default:
+                // 4-way BFS with a primitive queue (see GridBfs.distances)
+                return new Map(w, h, GridBfs.distances(v, w, h, start.getX(), start.getY(), obsColor, cyclic));
+        }
+    }
 
-        boolean found = false; // Flag to indicate if the end point was reached
+    /**
+     * Computes the cheapest path between p1 and p2 (8-connectivity) over terrain with per-color costs:
+     * stepping onto a pixel of value c costs costs[c], and pixels whose value is outside the table or whose
+     * cost is negative are obstacles (see WeightedPaths). With cost 1 for every free color this is shortestPath.
+     * @param costs the cost of each pixel value (at most WeightedPaths.MAX_COST).
+     * @return the cheapest path as an array of consecutive pixels, if none - returns null.
+     * @throws IllegalArgumentException if the only paths to p2 cost more than Integer.MAX_VALUE.
+     */
+    public Pixel2D[] shortestPathWeighted(Pixel2D p1, Pixel2D p2, int[] costs, boolean cyclic) {
+        // Dijkstra with a bucket (Dial) queue (see WeightedPaths.shortestPath)
+        return WeightedPaths.shortestPath(v, w, h, p1, p2, costs, cyclic);
+    }
 
-        // Main BFS Loop: Expand outward from start point
-        while (!q.isEmpty()) { // While there are cells to process
-            int[] cur = q.removeFirst(); // Get the next cell from the queue
-            int x = cur[0], y = cur[1];
+    /**
+     * Computes the cost of the cheapest path (4-connectivity) from start to every pixel over terrain with
+     * per-color costs (see shortestPathWeighted). Obstacles and unreachable pixels are -1.
+     * @param costs the cost of each pixel value (at most WeightedPaths.MAX_COST).
+     * @return the distance map.
+     * @throws IllegalArgumentException if a reachable pixel costs more than Integer.MAX_VALUE to get to.
+     */
+    public Map2D allDistanceWeighted(Pixel2D start, int[] costs, boolean cyclic) {
+        return new Map(w, h, WeightedPaths.distances(v, w, h, start.getX(), start.getY(), costs, cyclic));
+    }
 
-            // Goal reached: Stop searching and start path reconstruction
-            if (x == ex && y == ey) {
-                found = true;
-                break;
-            }
+    /**
+     * Computes the exact Euclidean distance transform: the squared Euclidean distance from every pixel to its
+     * nearest obstacle (of obsColor), going around the edges when cyclic - e.g. the clearance of each pixel.
+     * Obstacles are 0; if there are no obstacles at all every pixel is -1.
+     * The rows and the columns are processed in parallel on the common ForkJoinPool (see DistanceTransform).
+     * @return the map of the squared distances.
+     */
+    public Map2D distanceTransform(int obsColor, boolean cyclic) {
+        return new Map(w, h, DistanceTransform.squared(v, w, h, obsColor, cyclic));
+    }
 
-            // Explore all 8 neighboring directions
-            for (int[] d : directions) // For each direction: horizontal, vertical, diagonal
-            {
-                int nx = x + d[0];
-                int ny = y + d[1];
-
-                // Coordinate Wrapping (Cyclic): If off-edge, wrap to the opposite side
-                if (cyclic) {
-                    nx = (nx % W + W) % W; // Handle negative results from modulo and wrap around
-                    ny = (ny % H + H) % H; // Handle negative results from modulo and wrap around
-                } else {
-                    // Standard bounds check for non-cyclic maps
-                    if (nx < 0 || nx >= W || ny < 0 || ny >= H)
-                    {
-                        continue;
-                    }
-                }
+    /**
+     * Labels all the connected components of this map in one pass: a component is a maximal connected region
+     * of pixels with the same value (for connectivity 4, the region fill would recolor).
+     * The bands of rows are labeled in parallel on the common ForkJoinPool (see ComponentLabeler).
+     * @param connectivity 4 or 8.
+     * @return the label of every pixel (0..count-1, in the order of the components' first pixels) and the count.
+     */
+    public Components labelComponents(boolean cyclic, int connectivity) {
+        return ComponentLabeler.label(v, w, h, cyclic, connectivity, ForkJoinPool.commonPool());
+    }
 
-                // Valid movement check: Not visited and not an obstacle
-                if (!visited[ny][nx] && v[ny][nx] != obsColor)
-                {
-                    visited[ny][nx] = true;
-                    // Save 'current' as the 'parent' of 'neighbor' to remember the path
-                    parentX[ny][nx] = x;
-                    parentY[ny][nx] = y;
-                    q.addLast(new int[]{nx, ny}); // Add neighbor to the queue for further exploration
-                }
-            }
+    /**
+     * @return the packed y*w+x indices of the seeds, -1 for a seed outside this map.
+     */
+    private int[] pack(Pixel2D[] seeds)
+    {
+        if (seeds == null)
+        {
+            throw new IllegalArgumentException("seeds can't be null");
         }
-
-        // Path Reconstruction: If target was found, trace back using the parent arrays
-        if (!found) return null;
-
-        java.util.ArrayList<Pixel2D> path = new java.util.ArrayList<>(); // To store the path from start to end
-        int cx = ex, cy = ey; // Start tracing from the end point
-
-        while (true) // Loop until we reach the start point
+        int[] ans = new int[seeds.length];
+        for (int k = 0; k < seeds.length; k++)
         {
-            path.add(new Index2D(cx, cy)); // Add current point to path
-            if (cx == sx && cy == sy) // Reached the starting point
-            {
-                break;
-            }
-
-            // Move to the parent of the current cell
-            int px = parentX[cy][cx];
-            int py = parentY[cy][cx];
-
-            if (px == -1 && py == -1) // No parent found (should not happen if 'found' is true)
-            {
-                return null; // Safety check
-            }
-            cx = px; // Update current x to parent x
-            cy = py; // Update current y to parent y
+            int x = seeds[k].getX(), y = seeds[k].getY();
+            ans[k] = x >= 0 && x < w && y >= 0 && y < h ? y * w + x : -1;
         }
-
-        // Finalize result: Reverse the list (End->Start to Start->End) and convert to array
-        java.util.Collections.reverse(path);
-        ans = path.toArray(new Pixel2D[0]); // Convert list to array
-
         return ans;
     }
-    @Override
-/**
- * Calculates the shortest distance from a start pixel to all other reachable pixels.
- * Returns a Map2D where each pixel value represents its distance from the start.
- */
-    public Map2D allDistance(Pixel2D start, int obsColor, boolean cyclic) {
-        Map2D ans = null;  // Final result object
-        final int H = v.length;
-        final int W = v[0].length;
-        final int sx = start.getX(); // Starting X coordinate
-        final int sy = start.getY(); // Starting Y coordinate
-
-        // Initialize distance matrix with -1 (representing unreachable areas)
-        int[][] distance = new int[H][W];
-        for (int y = 0; y < H; y++)
+
+    /**
+     * @return the engine used by allDistance(start, obsColor, cyclic).
+     */
+    public DistanceEngine getDistanceEngine()
+    {
+        return distanceEngine;
+    }
+
+    /**
+     * Sets the engine used by allDistance(start, obsColor, cyclic) of this map.
+     * @param engine the algorithm to use (not null).
+     */
+    public void setDistanceEngine(DistanceEngine engine)
+    {
+        if (engine == null)
         {
-            java.util.Arrays.fill(distance[y], -1); // Mark all as unreachable initially
+            throw new IllegalArgumentException("engine can't be null");
         }
+        this.distanceEngine = engine;
+    }
 
-        // Initial boundary check: If start is out of bounds, return the empty distance map
-        if (sx < 0 || sx >= W || sy < 0 || sy >= H)
+    /**
+     * Computes the distance of every pixel from its nearest seed (e.g. the distance to the nearest exit),
+     * in a single BFS pass from all the seeds together - with the same marks as allDistance(start, obsColor, cyclic):
+     * unreachable pixels are -1 and obstacles are marked with obsColor. Seeds outside the map or on obstacles are ignored.
+     * @param seeds the source pixels.
+     * @return the distance map.
+     */
+    public Map2D allDistance(Pixel2D[] seeds, int obsColor, boolean cyclic) {
+        if (distanceEngine == DistanceEngine.BITSET) // wide fronts (e.g. seeds along a row) are where the bitsets shine
         {
-            return new Map(distance);
+            return new Map(w, h, BitBfs.distances(v, w, h, pack(seeds), obsColor, cyclic));
         }
-
-        // Pre-marking obstacles: Copy obstacle positions to the distance map for visibility
-        // Also handles the case where the starting point itself is an obstacle
-        if (v[sy][sx] == obsColor) { // If start is an obstacle, return map with only obstacles marked
-            for (int y = 0; y < H; y++)
-            {
-                for (int x = 0; x < W; x++)
-                {
-                    if (v[y][x] == obsColor)
-                    {
-                        distance[y][x] = obsColor; // Mark obstacles
-                    }
-                }
-            }
-            return new Map(distance); // Return the distance map with obstacles marked
+        if (distanceEngine == DistanceEngine.PARALLEL)
+        {
+            return new Map(w, h, ParallelBfs.distances(v, w, h, pack(seeds), obsColor, cyclic, ForkJoinPool.commonPool()));
+        }
+        if (distanceEngine == DistanceEngine.DIRECTION_OPTIMIZING) // the huge middle layers of many seeds go bottom-up
+        {
+            return new Map(w, h, DirectionOptimizingBfs.distances(v, w, h, pack(seeds), obsColor, cyclic));
         }
+        return allDistance(seeds, obsColor, cyclic, null);
+    }
 
-        // Fill the distance map with obstacle markers before starting the search
-        for (int y = 0; y < H; y++)
+    /**
+     * Computes the distance of every pixel from its nearest seed (see allDistance(seeds, obsColor, cyclic)),
+     * and in the same pass labels every pixel with its nearest seed (a Voronoi partition of the free pixels).
+     * @param seeds the source pixels.
+     * @param labels if not null, is re-initialized to the size of this map and gets the index (in seeds) of the
+     * nearest seed of every pixel - the smallest index on ties - and -1 for obstacles and unreachable pixels.
+     * It can not be this map.
+     * @return the distance map.
+     */
+    public Map2D allDistance(Pixel2D[] seeds, int obsColor, boolean cyclic, Map2D labels) {
+        if (labels == this)
+        {
+            throw new IllegalArgumentException("labels can't be the map itself");
+        }
+        int[] packed = pack(seeds);
+        if (labels instanceof Map) // hand it the label array as its new pixels (see init)
         {
-            for (int x = 0; x < W; x++)
+            int[] lab = new int[w * h];
+            int[] dist = GridBfs.distances(v, w, h, packed, obsColor, cyclic, lab);
+            ((Map) labels).replace(w, h, lab);
+            return new Map(w, h, dist);
+        }
+        int[] lab = labels == null ? null : new int[w * h];
+        int[] dist = GridBfs.distances(v, w, h, packed, obsColor, cyclic, lab);
+        if (labels != null)
+        {
+            labels.init(w, h, -1);
+            for (int y = 0; y < h; y++)
             {
-                if (v[y][x] == obsColor) // If the pixel is an obstacle
+                for (int x = 0; x < w; x++)
                 {
-                    distance[y][x] = obsColor; // Mark it in the distance map
+                    labels.setPixel(x, y, lab[y * w + x]);
                 }
             }
         }
+        return new Map(w, h, dist);
+    }
+    ////////////////////// Listeners /////////////////////////
+    /**
+     * Registers a listener which is notified of every change of this map (see MapListener).
+     * Listeners are not serialized with the map.
+     * @param l the listener (not null).
+     */
+    public void addMapListener(MapListener l)
+    {
+        if (l == null)
+        {
+            throw new IllegalArgumentException("listener can't be null");
+        }
+        if (listeners == null)
+        {
+            listeners = new ArrayList<>();
+        }
+        listeners.add(l);
+    }
 
-        // BFS Setup: Use a queue to explore pixels layer by layer (by distance)
-        final boolean[][] visited = new boolean[H][W];
-        final ArrayDeque<int[]> q = new ArrayDeque<>();
-        final int[][] directions = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}}; // 4-way movement
-
-        // Initialize the starting point
-        visited[sy][sx] = true;
-        distance[sy][sx] = 0; // Distance to self is 0
-        q.add(new int[]{sx, sy});
-
-        // Main BFS Loop
-        while (!q.isEmpty())
+    /**
+     * Unregisters a listener (nothing happens if it is not registered).
+     */
+    public void removeMapListener(MapListener l)
+    {
+        if (listeners != null && listeners.remove(l) && listeners.isEmpty())
         {
-            int[] cur = q.removeFirst(); // Get the next pixel to process
-            int x = cur[0], y = cur[1];
+            listeners = null; // keeps put() free of any listener work
+        }
+    }
 
-            // Check all 4 neighbors (Up, Down, Left, Right)
-            for (int[] d : directions)
+    private void fireMapChanged()
+    {
+        if (listeners != null)
+        {
+            for (int k = 0; k < listeners.size(); k++)
             {
-                int nx = x + d[0], ny = y + d[1];
-
-                // Handle Cyclic Topology: Wrap around edges if cyclic is true
-                if (cyclic)
-                {
-                    // Modulo math to ensure coordinates stay within [0, W-1] and [0, H-1]
-                    nx = ((nx % W) + W) % W;
-                    ny = ((ny % H) + H) % H;
-                }
-                else
-                {
-                    // Standard bounds check: Skip if neighbor is outside the map
-                    if (nx < 0 || nx >= W || ny < 0 || ny >= H)
-                    {
-                        continue;
-                    }
-                }
-
-                // Skip if the pixel was already visited or is an obstacle
-                if (visited[ny][nx])
-                {
-                    continue;
-                }
-                if (v[ny][nx] == obsColor)
-                {
-                    continue;
-                }
-
-                // Mark as visited and calculate distance
-                visited[ny][nx] = true;
-                // The distance to the neighbor is the current pixel's distance + 1 step
-                distance[ny][nx] = distance[y][x] + 1;
-
-                // Add neighbor to the queue to process its neighbors in the next layer
-                q.add(new int[]{nx, ny});
+                listeners.get(k).mapChanged(this);
             }
         }
-
-        // Wrap the resulting distance matrix in a Map object and return
-        ans = new Map(distance);
-        return ans; // Return the distance map
     }
-	////////////////////// Private Methods /////////////////////////
-    private boolean inBounds(int x, int y) // check if (x,y) is within bounds
+	////////////////////// Storage /////////////////////////
+    @Override
+    protected void allocate(int w, int h, int v)
+    {
+        init(w, h, v);
+    }
+    @Override
+    protected int get(int x, int y)
     {
-        return (x >= 0 && x < w && y >= 0 && y < h);
+        return v[y * w + x];
     }
-    private void checkBounds(int x, int y) // throw exception if (x,y) is out of bounds
+    @Override
+    protected void put(int x, int y, int v)
     {
-        if (!inBounds(x, y))
+        int i = y * w + x, old = this.v[i];
+        this.v[i] = v;
+        modCount++;
+        if (listeners != null && old != v)
         {
-            throw new IndexOutOfBoundsException("Out of bounds: (" + x + "," + y + ") for " + w + "x" + h);
+            for (int k = 0; k < listeners.size(); k++)
+            {
+                listeners.get(k).pixelChanged(this, x, y, old, v);
+            }
         }
     }
 
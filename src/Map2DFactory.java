@@ -0,0 +1,59 @@
+/**
+ * Creates Map2D objects with the narrowest pixel storage which can hold the given data:
+ * ByteMap2D, ShortMap2D or (int based) Map.
+ * Note: the narrow maps widen themselves if a larger value is written later on.
+ */
+public final class Map2DFactory {
+
+    private Map2DFactory() {} // static methods only
+
+    /**
+     * Constructs a w*h map, all set to v, with the narrowest storage for v.
+     * @param w the width of the map.
+     * @param h the height of the map.
+     * @param v the init value of all the pixels.
+     * @return a new Map2D.
+     */
+    public static Map2D create(int w, int h, int v)
+    {
+        if (ByteMap2D.fits(v))
+        {
+            return new ByteMap2D(w, h, v);
+        }
+        if (ShortMap2D.fits(v))
+        {
+            return new ShortMap2D(w, h, v);
+        }
+        return new Map(w, h, v);
+    }
+
+    /**
+     * Constructs a map from a 2D (row-major) array, choosing the narrowest storage
+     * which can hold all of its values.
+     * @param arr a 2D int array (arr[y][x]).
+     * @return a new Map2D holding a deep copy of arr.
+     * @throws IllegalArgumentException if arr == null, empty or ragged.
+     */
+    public static Map2D create(int[][] arr)
+    {
+        AbstractMap2D.checkArray(arr);
+        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (int[] row : arr)
+        {
+            for (int a : row)
+            {
+                if (a < min) min = a;
+                if (a > max) max = a;
+            }
+        }
+        if (ByteMap2D.fits(min) && ByteMap2D.fits(max))
+        {
+            return new ByteMap2D(arr);
+        }
+        if (ShortMap2D.fits(min) && ShortMap2D.fits(max))
+        {
+            return new ShortMap2D(arr);
+        }
+        return new Map(arr);
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ * Receives the changes of a Map (see Map.addMapListener) - e.g. to keep a search structure
+ * (like a PathPlanner) up to date without recomputing it from scratch.
+ */
+public interface MapListener {
+
+    /**
+     * Called after a single pixel of the map changed its value (setPixel, or any drawing method).
+     * @param map the map which changed.
+     * @param x the x coordinate of the pixel.
+     * @param y the y coordinate of the pixel.
+     * @param oldValue the value of the pixel before the change.
+     * @param newValue the value of the pixel after the change.
+     */
+    void pixelChanged(Map map, int x, int y, int oldValue, int newValue);
+
+    /**
+     * Called after a change of (possibly) many pixels at once, or of the size of the map
+     * (init, fill, mul, addMap2D, rescale): everything derived from the map should be recomputed.
+     * @param map the map which changed.
+     */
+    void mapChanged(Map map);
+}
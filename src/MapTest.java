@@ -36,6 +36,34 @@ class MapTest {
 
         assertEquals(_m0, _m1);
     }
+    @Test
+    void initNotifiesListenersAfterCopy() {
+        Map m = new Map(2, 2, 0);
+        int[] seen = {-1};
+        m.addMapListener(new MapListener() {
+            @Override
+            public void pixelChanged(Map map, int x, int y, int oldValue, int newValue) {}
+
+            @Override
+            public void mapChanged(Map map) {
+                seen[0] = map.getPixel(2, 0); // read eagerly: the new content must be there already
+            }
+        });
+        m.init(new int[][]{{1, 2, 3}, {4, 5, 6}});
+        assertEquals(3, seen[0]);
+    }
+    @Test
+    void initNonSquareKeepsRowMajorLayout() {
+        // 2 rows (height) of 3 columns (width), indexed arr[y][x] like getMap() and GUI.loadMap()
+        int[][] arr = {{1, 2, 3}, {4, 5, 6}};
+        Map m = new Map(arr);
+        assertEquals(3, m.getWidth());
+        assertEquals(2, m.getHeight());
+        assertEquals(3, m.getPixel(2, 0));
+        assertEquals(4, m.getPixel(0, 1));
+        assertArrayEquals(arr, m.getMap(), "getMap() must round-trip the init array");
+    }
+
     @Test
     void testEquals() {
         assertEquals(_m0,_m1);
@@ -149,4 +177,594 @@ class MapTest {
         assertEquals(6, distMap.getPixel(3, 3), "Opposite corner should be distance 6");
     }
 
-}
\ No newline at end of file
+    @Test
+    void factoryPicksNarrowestStorage() {
+        assertInstanceOf(ByteMap2D.class, Map2DFactory.create(_map_3_3));
+        assertInstanceOf(ShortMap2D.class, Map2DFactory.create(new int[][]{{0, 300}, {-1, 7}}));
+        assertInstanceOf(Map.class, Map2DFactory.create(new int[][]{{0, 70000}}));
+        // Different storage, same dimensions and values --> equal maps
+        assertEquals(new Map(_map_3_3), Map2DFactory.create(_map_3_3));
+        assertEquals(Map2DFactory.create(_map_3_3), new Map(_map_3_3));
+    }
+
+    @Test
+    void narrowMapsWidenOnOverflow() {
+        ByteMap2D b = new ByteMap2D(4, 3, 12);
+        b.setPixel(1, 1, 1000); // does not fit a byte: widened to shorts, not ints
+        assertTrue(b.isWidened());
+        assertEquals(2, b.getBytesPerPixel());
+        assertEquals(1000, b.getPixel(1, 1));
+        assertEquals(12, b.getPixel(3, 2));
+        b.setPixel(0, 2, -70000); // does not fit a short either
+        assertEquals(4, b.getBytesPerPixel());
+        assertEquals(1000, b.getPixel(1, 1));
+        assertEquals(-70000, b.getPixel(0, 2));
+        b.init(2, 2, 5); // a new storage starts narrow again
+        assertFalse(b.isWidened());
+
+        ShortMap2D s = new ShortMap2D(4, 3, 200);
+        s.mul(1000); // 200000 does not fit a short
+        assertTrue(s.isWidened());
+        assertEquals(200000, s.getPixel(0, 0));
+
+        ByteMap2D a = new ByteMap2D(4, 3, 100);
+        a.addMap2D(new Map(4, 3, 100));
+        assertEquals(200, a.getPixel(2, 2));
+    }
+
+    @Test
+    void narrowMapsAlgorithmsMatchMap() {
+        int[][] grid = new int[20][30];
+        for (int x = 0; x < 25; x++) grid[10][x] = 1; // wall with a gap on the right
+        Map m = new Map(grid);
+        Map2D b = Map2DFactory.create(grid);
+        Pixel2D s = new Index2D(2, 2), t = new Index2D(2, 17);
+        assertEquals(m.shortestPath(s, t, 1, false).length, b.shortestPath(s, t, 1, false).length);
+        assertEquals(m.allDistance(s, 1, true), b.allDistance(s, 1, true));
+        assertEquals(m.fill(s, 5, false), b.fill(s, 5, false));
+        assertEquals(m, b);
+    }
+
+    @Test
+    void offHeapMatchesMapAndReleases() {
+        int[][] grid = new int[40][50];
+        for (int y = 0; y < 35; y++) grid[y][20] = 1; // wall with a gap at the bottom
+        Map m = new Map(grid);
+        OffHeapMap2D o = new OffHeapMap2D(grid);
+        Pixel2D s = new Index2D(2, 2), t = new Index2D(45, 3);
+        assertEquals(m, o);
+        for (boolean cyclic : new boolean[]{false, true}) {
+            Pixel2D[] path = o.shortestPath(s, t, 1, cyclic);
+            assertEquals(m.shortestPath(s, t, 1, cyclic).length, path.length);
+            for (int i = 1; i < path.length; i++) {
+                assertNotEquals(1, o.getPixel(path[i]), "path must avoid obstacles");
+            }
+            try (OffHeapMap2D d = (OffHeapMap2D) o.allDistance(s, 1, cyclic)) {
+                assertEquals(m.allDistance(s, 1, cyclic), d);
+            }
+        }
+        assertEquals(m.fill(s, 7, true), o.fill(s, 7, true));
+        assertEquals(m, o);
+        o.close();
+        assertFalse(o.isOpen());
+        assertThrows(IllegalStateException.class, () -> o.getPixel(0, 0));
+    }
+
+    @Test
+    void mappedMapWritesThroughToFile() throws Exception {
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("map2d", ".bin");
+        try {
+            Map m = new Map(30, 20, 11);
+            m.drawRect(new Index2D(5, 5), new Index2D(25, 15), 1);
+            try (MappedMap2D mm = MappedMap2D.create(file, m)) {
+                assertEquals(m, mm);
+                mm.setPixel(0, 0, 7); // written through to the file
+                m.setPixel(0, 0, 7);
+                assertEquals(m.shortestPath(new Index2D(0, 0), new Index2D(29, 19), 1, false).length,
+                        mm.shortestPath(new Index2D(0, 0), new Index2D(29, 19), 1, false).length);
+            }
+            try (MappedMap2D mm = MappedMap2D.open(file)) {
+                assertEquals(m, mm, "re-opened map must hold the written pixels");
+                mm.rescale(0.5, 2);
+                m.rescale(0.5, 2);
+                assertEquals(m, mm);
+            }
+            try (MappedMap2D mm = MappedMap2D.open(file)) {
+                assertEquals(m, mm, "rescale must resize the file");
+            }
+        } finally {
+            java.nio.file.Files.delete(file);
+        }
+    }
+
+    @Test
+    void tiledMapMatchesMap() {
+        // A mostly empty 150x130 world (partial edge tiles) with a few drawn obstacles
+        Map m = new Map(150, 130, 6);
+        m.drawRect(new Index2D(10, 10), new Index2D(70, 90), 1);
+        m.drawCircle(new Index2D(100, 60), 20, 1);
+        m.drawLine(new Index2D(0, 120), new Index2D(140, 100), 1);
+        TiledMap2D t = new TiledMap2D(m.getMap());
+        assertEquals(m, t);
+        assertTrue(t.getMaterializedTiles() < 12, "uniform tiles must not be materialized");
+        Pixel2D[] starts = {new Index2D(90, 20), new Index2D(30, 30), new Index2D(149, 129), new Index2D(100, 60)};
+        for (Pixel2D s : starts) {
+            for (boolean cyclic : new boolean[]{false, true}) {
+                assertEquals(m.allDistance(s, 1, cyclic), t.allDistance(s, 1, cyclic), s + " cyclic=" + cyclic);
+            }
+        }
+        assertEquals(m.fill(new Index2D(140, 5), 3, true), t.fill(new Index2D(140, 5), 3, true));
+        assertEquals(m, t);
+        assertEquals(m.fill(new Index2D(30, 30), 2, false), t.fill(new Index2D(30, 30), 2, false));
+        assertEquals(m, t);
+        t.mul(2);
+        m.mul(2);
+        assertEquals(m, t);
+    }
+
+    @Test
+    void tiledMapInitMaterializesOnlyMixedTiles() {
+        int[][] arr = new int[70][200]; // 4x2 tiles of 9, one of them with another value
+        for (int[] row : arr) java.util.Arrays.fill(row, 9);
+        arr[65][130] = 4;
+        TiledMap2D t = new TiledMap2D(arr);
+        assertEquals(1, t.getMaterializedTiles());
+        assertEquals(4, t.getPixel(130, 65));
+        assertEquals(9, t.getPixel(199, 69));
+        assertEquals(new Map(arr), t);
+    }
+
+    @Test
+    void rleMapMatchesMap() throws Exception {
+        // A small maze-like floor plan: long horizontal runs
+        Map m = new Map(60, 40, 11);
+        for (int y = 4; y < 40; y += 8) {
+            m.drawLine(new Index2D(y % 16 == 4 ? 0 : 8, y), new Index2D(y % 16 == 4 ? 51 : 59, y), 0);
+        }
+        m.drawRect(new Index2D(20, 10), new Index2D(30, 18), 3);
+        RleMap2D r = new RleMap2D(m.getMap());
+        assertEquals(m, r);
+        assertEquals(r, m);
+        assertEquals(m.hashCode(), r.hashCode());
+        assertTrue(r.getRunCount(4) <= 2);
+        for (boolean cyclic : new boolean[]{false, true}) {
+            Pixel2D s = new Index2D(25, 14);
+            assertEquals(m.allDistance(s, 0, cyclic), r.allDistance(s, 0, cyclic), "cyclic=" + cyclic);
+            s = new Index2D(1, 1);
+            assertEquals(m.allDistance(s, 0, cyclic), r.allDistance(s, 0, cyclic), "cyclic=" + cyclic);
+        }
+        assertEquals(m.fill(new Index2D(0, 0), 5, true), r.fill(new Index2D(0, 0), 5, true));
+        assertEquals(m, r);
+        r.setPixel(7, 7, 9);
+        m.setPixel(7, 7, 9);
+        assertEquals(m, r);
+
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("rle", ".txt");
+        try {
+            GUI.saveMap(r, file.toString());
+            assertEquals(m, GUI.loadMap(file.toString()), "runs must be saved as plain pixel rows");
+        } finally {
+            java.nio.file.Files.delete(file);
+        }
+    }
+
+    @Test
+    void fillCyclicWrapsAroundEdges() {
+        int[][] grid = {
+                {0, 1, 1, 0},
+                {1, 1, 1, 1},
+                {0, 1, 1, 0},
+                {0, 1, 0, 0}
+        };
+        // Not cyclic: only the top-left corner pixel
+        Map m = new Map(grid);
+        assertEquals(1, m.fill(new Index2D(0, 0), 7, false));
+        // Cyclic: the 4 corners, the bottom right block and (2,3) are one component (7 pixels)
+        m = new Map(grid);
+        assertEquals(7, m.fill(new Index2D(0, 0), 7, true));
+        assertEquals(7, m.getPixel(3, 3));
+        assertEquals(7, m.getPixel(3, 2));
+        assertEquals(1, m.getPixel(1, 3));
+        // A full row of the old color is recolored once (the span may not overlap itself)
+        m = new Map(5, 1, 2);
+        assertEquals(5, m.fill(new Index2D(3, 0), 4, true));
+    }
+
+    @Test
+    void searchesReuseWorkspaceAcrossMaps() {
+        // Consecutive searches on maps of different sizes share the thread's BfsWorkspace
+        Map big = new Map(60, 50, 0);
+        big.drawLine(new Index2D(30, 0), new Index2D(30, 45), 1);
+        Map small = new Map(5, 5, 0);
+        for (int i = 0; i < 3; i++) {
+            Pixel2D[] p = big.shortestPath(new Index2D(0, 0), new Index2D(59, 0), 1, false);
+            assertEquals(93, p.length, "round " + i); // around the wall: 46 diagonal-ish steps down and 46 up
+            assertEquals(5, small.shortestPath(new Index2D(0, 0), new Index2D(4, 4), 1, false).length);
+            assertEquals(8, small.allDistance(new Index2D(0, 0), 1, false).getPixel(4, 4));
+            assertEquals(2, big.allDistance(new Index2D(0, 0), 1, true).getPixel(59, 49), "round " + i); // wraps both edges
+        }
+        BfsWorkspace.release();
+        assertEquals(25, small.fill(new Index2D(2, 2), 3, false));
+    }
+
+    @Test
+    void shortestPathEnginesAgreeOnLength() {
+        Map m = new Map(40, 30, 11);
+        m.drawRect(new Index2D(5, 5), new Index2D(34, 24), 0);
+        m.setPixel(34, 15, 11); // a door on the right side of the room
+        Pixel2D in = new Index2D(10, 10), out = new Index2D(2, 28);
+        for (boolean cyclic : new boolean[]{false, true}) {
+            Pixel2D[] bfs = m.shortestPath(in, out, 0, cyclic, PathEngine.BFS);
+            for (PathEngine e : PathEngine.values()) {
+                Pixel2D[] p = m.shortestPath(in, out, 0, cyclic, e);
+                assertEquals(bfs.length, p.length, e + " cyclic=" + cyclic);
+                assertEquals(in, p[0]);
+                assertEquals(out, p[p.length - 1]);
+            }
+        }
+        m.setPathEngine(PathEngine.BIDIRECTIONAL);
+        assertEquals(PathEngine.BIDIRECTIONAL, m.getPathEngine());
+        m.setPixel(34, 15, 0); // close the door
+        assertNull(m.shortestPath(in, out, 0, false));
+    }
+
+    @Test
+    void jumpTableFollowsMapChanges() {
+        Map m = new Map(30, 20, 0);
+        m.setPathEngine(PathEngine.JPS_PLUS);
+        Pixel2D a = new Index2D(2, 10), b = new Index2D(27, 10);
+        assertEquals(26, m.shortestPath(a, b, 1, false).length);
+        m.drawLine(new Index2D(15, 0), new Index2D(15, 18), 1); // a wall with a gap at the bottom
+        Pixel2D[] p = m.shortestPath(a, b, 1, false);
+        assertEquals(m.shortestPath(a, b, 1, false, PathEngine.BFS).length, p.length);
+        assertEquals(new Index2D(15, 19), p[p.length / 2]);
+        m.setPixel(15, 19, 1); // close the gap
+        assertNull(m.shortestPath(a, b, 1, false));
+        assertEquals(6, m.shortestPath(a, b, 1, true).length); // around the edge
+    }
+
+    @Test
+    void plannerRepairsPathAfterChanges() {
+        Map m = new Map(60, 40, 0);
+        Pixel2D a = new Index2D(5, 20), b = new Index2D(54, 20);
+        try (PathPlanner planner = new PathPlanner(m, a, b, 1, false)) {
+            assertEquals(50, planner.getPath().length);
+            m.drawLine(new Index2D(30, 0), new Index2D(30, 35), 1); // a wall between a and b
+            Pixel2D[] p = planner.getPath();
+            assertEquals(m.shortestPath(a, b, 1, false).length, p.length);
+            assertTrue(planner.getExpanded() < 60 * 40);
+            m.setPixel(30, 10, 0); // a door closer to the straight line
+            assertEquals(m.shortestPath(a, b, 1, false).length, planner.getPath().length);
+            planner.setStart(p[3]);
+            assertEquals(m.shortestPath(p[3], b, 1, false).length, planner.getPath().length);
+            m.fill(new Index2D(30, 0), 0, false); // a bulk change: the wall is gone
+            assertEquals(47, planner.getPath().length);
+            m.setPixel(b, 1);
+            assertNull(planner.getPath());
+        }
+        m.setPixel(b, 0); // closed: no longer listening
+    }
+
+    @Test
+    void distanceFieldMatchesAllDistance() {
+        Map m = new Map(40, 30, 0);
+        Pixel2D src = new Index2D(3, 4);
+        for (boolean cyclic : new boolean[]{false, true}) {
+            try (DistanceField f = new DistanceField(m, src, 1, cyclic)) {
+                assertEquals(m.allDistance(src, 1, cyclic), f.toMap());
+                m.drawLine(new Index2D(10, 0), new Index2D(10, 28), 1); // a new wall
+                assertEquals(m.allDistance(src, 1, cyclic), f.toMap());
+                m.setPixel(10, 15, 0); // a door in it
+                m.setPixel(5, 5, 1);
+                assertEquals(m.allDistance(src, 1, cyclic), f.toMap());
+                assertTrue(f.getRepaired() < 40 * 30);
+                assertEquals(1, f.getDistance(5, 5));
+                m.setPixel(src, 1); // the source itself is blocked
+                assertEquals(m.allDistance(src, 1, cyclic), f.toMap());
+                m.init(40, 30, 0); // a bulk change
+                assertEquals(m.allDistance(src, 1, cyclic), f.toMap());
+            }
+        }
+    }
+
+    @Test
+    void multiSourceDistanceAndLabels() {
+        Map m = new Map(9, 3, 0);
+        m.drawLine(new Index2D(4, 0), new Index2D(4, 1), 1);
+        Pixel2D[] exits = {new Index2D(0, 0), new Index2D(8, 0), new Index2D(8, 0)};
+        Map labels = new Map(1, 1, 0);
+        Map2D d = m.allDistance(exits, 1, false, labels);
+        assertEquals(9, labels.getWidth());
+        assertEquals(0, d.getPixel(0, 0));
+        assertEquals(1, d.getPixel(4, 0)); // an obstacle keeps obsColor
+        assertEquals(-1, labels.getPixel(4, 0));
+        assertEquals(6, d.getPixel(4, 2)); // the same distance from both exits: the first one wins
+        assertEquals(0, labels.getPixel(4, 2));
+        assertEquals(1, labels.getPixel(5, 2));
+        assertEquals(4, d.getPixel(3, 1));
+        // a single seed is the usual allDistance, cyclic too
+        assertEquals(m.allDistance(exits[1], 1, true), m.allDistance(new Pixel2D[]{exits[1]}, 1, true));
+        assertEquals(-1, m.allDistance(new Pixel2D[0], 1, false).getPixel(0, 0));
+        assertThrows(IllegalArgumentException.class, () -> m.allDistance(exits, 1, false, m)); // would overwrite m
+        assertEquals(1, m.getPixel(4, 0));
+    }
+
+    @Test
+    void bitsetDistancesMatchBfs() {
+        Map m = new Map(150, 40, 0); // more than 2 words per row
+        m.drawRect(new Index2D(20, 5), new Index2D(130, 30), 1);
+        m.drawRect(new Index2D(21, 6), new Index2D(129, 29), 0);
+        m.setPixel(63, 5, 0); // doors on a word boundary
+        m.setPixel(64, 30, 0);
+        Pixel2D[] wall = new Pixel2D[150];
+        for (int x = 0; x < wall.length; x++) wall[x] = new Index2D(x, 0);
+        for (boolean cyclic : new boolean[]{false, true}) {
+            for (Pixel2D s : new Pixel2D[]{new Index2D(0, 0), new Index2D(149, 39), new Index2D(70, 20)}) {
+                assertEquals(m.allDistance(s, 1, cyclic, DistanceEngine.BFS), m.allDistance(s, 1, cyclic, DistanceEngine.BITSET));
+            }
+            Map2D bfs = m.allDistance(wall, 1, cyclic);
+            m.setDistanceEngine(DistanceEngine.BITSET);
+            assertEquals(bfs, m.allDistance(wall, 1, cyclic));
+            assertEquals(DistanceEngine.BITSET, m.getDistanceEngine());
+            m.setDistanceEngine(DistanceEngine.BFS);
+        }
+    }
+
+    @Test
+    void parallelDistancesMatchBfs() {
+        Map m = new Map(200, 150, 0); // several 64x64 tiles, the last ones partial
+        m.drawRect(new Index2D(30, 30), new Index2D(170, 120), 1);
+        m.drawRect(new Index2D(31, 31), new Index2D(169, 119), 0);
+        m.setPixel(64, 30, 0); // doors on tile boundaries
+        m.setPixel(169, 128, 1);
+        m.setPixel(127, 120, 0);
+        Pixel2D[] exits = {new Index2D(0, 0), new Index2D(199, 149), new Index2D(100, 75)};
+        for (boolean cyclic : new boolean[]{false, true}) {
+            for (Pixel2D s : exits) {
+                assertEquals(m.allDistance(s, 1, cyclic, DistanceEngine.BFS), m.allDistance(s, 1, cyclic, DistanceEngine.PARALLEL));
+            }
+            Map2D bfs = m.allDistance(exits, 1, cyclic);
+            m.setDistanceEngine(DistanceEngine.PARALLEL);
+            assertEquals(bfs, m.allDistance(exits, 1, cyclic));
+            m.setDistanceEngine(DistanceEngine.BFS);
+        }
+    }
+
+    @Test
+    void directionOptimizingDistancesMatchBfs() {
+        Map m = new Map(60, 40, 0);
+        m.drawRect(new Index2D(10, 10), new Index2D(50, 30), 1);
+        m.drawRect(new Index2D(11, 11), new Index2D(49, 29), 0);
+        m.setPixel(30, 10, 0);
+        Pixel2D[] seeds = new Pixel2D[120]; // wide frontiers: the middle layers go bottom-up
+        for (int k = 0; k < seeds.length; k++) seeds[k] = new Index2D((k * 37) % 60, (k * 13) % 40);
+        for (boolean cyclic : new boolean[]{false, true}) {
+            assertEquals(m.allDistance(seeds[0], 1, cyclic, DistanceEngine.BFS), m.allDistance(seeds[0], 1, cyclic, DistanceEngine.DIRECTION_OPTIMIZING));
+            Map2D bfs = m.allDistance(seeds, 1, cyclic);
+            m.setDistanceEngine(DistanceEngine.DIRECTION_OPTIMIZING);
+            assertEquals(bfs, m.allDistance(seeds, 1, cyclic));
+            m.setDistanceEngine(DistanceEngine.BFS);
+        }
+    }
+
+    @Test
+    void batchShortestPathsMatchSingleQueries() {
+        Map m = new Map(40, 30, 0);
+        m.drawRect(new Index2D(5, 5), new Index2D(34, 24), 1);
+        m.drawRect(new Index2D(6, 6), new Index2D(33, 23), 0);
+        m.setPixel(34, 15, 0); // a door
+        Pixel2D a = new Index2D(10, 10), b = new Index2D(2, 28);
+        java.util.List<PathQuery> queries = java.util.List.of(
+                new PathQuery(a, b, 1, false), new PathQuery(b, a, 1, true), new PathQuery(a, new Index2D(30, 20), 1, false),
+                new PathQuery(a, a, 1, false), new PathQuery(a, new Index2D(5, 5), 1, false), // a goal on an obstacle
+                new PathQuery(new Index2D(-1, 0), b, 1, false), new PathQuery(a, b, 1, true));
+        Pixel2D[][] paths = m.shortestPaths(queries);
+        assertEquals(queries.size(), paths.length);
+        for (int k = 0; k < paths.length; k++) {
+            PathQuery q = queries.get(k);
+            assertArrayEquals(m.shortestPath(q.getP1(), q.getP2(), q.getObsColor(), q.isCyclic(), PathEngine.BFS), paths[k], q.toString());
+        }
+        assertNull(paths[4]);
+        assertNull(paths[5]);
+        assertEquals(1, paths[3].length);
+        assertThrows(IllegalArgumentException.class, () -> new PathQuery(a, null, 1, false));
+    }
+
+    @Test
+    void weightedPathsPreferCheapTerrain() {
+        final int ROAD = 0, MUD = 1, WALL = 2;
+        int[] costs = {1, 5, -1};
+        Map m = new Map(20, 7, MUD);
+        m.drawLine(new Index2D(0, 0), new Index2D(19, 0), ROAD); // a road along the top row
+        m.drawLine(new Index2D(10, 1), new Index2D(10, 6), WALL);
+        m.setPixel(10, 0, ROAD);
+        Pixel2D a = new Index2D(0, 3), b = new Index2D(19, 3);
+        Pixel2D[] p = m.shortestPathWeighted(a, b, costs, false);
+        int sum = 0;
+        for (int k = 1; k < p.length; k++) sum += costs[m.getPixel(p[k])];
+        assertEquals(a, p[0]);
+        assertEquals(b, p[p.length - 1]);
+        assertEquals(2 * 5 + 14 + 3 * 5, sum); // 2 mud steps up to the road at x=3, the road to x=16, 3 mud steps down
+        assertNull(m.shortestPathWeighted(a, new Index2D(10, 3), costs, false));
+        assertEquals(p.length, m.shortestPathWeighted(a, b, costs, false).length); // the queue left no entries behind
+
+        Map2D d = m.allDistanceWeighted(a, costs, false);
+        assertEquals(0, d.getPixel(a));
+        assertEquals(-1, d.getPixel(10, 3));
+        assertEquals(5 + 5 + 1 + 1, d.getPixel(1, 0)); // 4-connected: two mud steps up, then the road
+        int[] unit = {1, 1, -1}; // the same costs everywhere: the BFS distances
+        Map2D bfs = m.allDistance(a, WALL, false);
+        Map2D weighted = m.allDistanceWeighted(a, unit, false);
+        for (int y = 0; y < 7; y++) {
+            for (int x = 0; x < 20; x++) {
+                assertEquals(m.getPixel(x, y) == WALL ? -1 : bfs.getPixel(x, y), weighted.getPixel(x, y));
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> m.shortestPathWeighted(a, b, null, false));
+
+        int[] steep = {WeightedPaths.MAX_COST}; // long and expensive: the distances stay within an int ...
+        Map line = new Map(30000, 1, 0);
+        assertEquals(29999 * WeightedPaths.MAX_COST, line.allDistanceWeighted(new Index2D(0, 0), steep, false).getPixel(29999, 0));
+        Map longer = new Map(40000, 1, 0); // ... or are rejected, unless the goal is nearer
+        assertThrows(IllegalArgumentException.class, () -> longer.allDistanceWeighted(new Index2D(0, 0), steep, false));
+        assertEquals(101, longer.shortestPathWeighted(new Index2D(0, 0), new Index2D(100, 0), steep, false).length);
+        assertThrows(IllegalArgumentException.class, () -> longer.shortestPathWeighted(new Index2D(0, 0), new Index2D(39999, 0), steep, false));
+    }
+
+    @Test
+    void distanceTransformIsSquaredEuclidean() {
+        Map m = new Map(9, 7, 0);
+        m.setPixel(1, 1, 5);
+        m.setPixel(7, 5, 5);
+        Map2D d = m.distanceTransform(5, false);
+        assertEquals(0, d.getPixel(1, 1));
+        assertEquals(1, d.getPixel(2, 1));
+        assertEquals(2, d.getPixel(2, 2));
+        assertEquals(3 * 3 + 1, d.getPixel(4, 0)); // nearest: (1,1)
+        assertEquals(1 + 1, d.getPixel(8, 6)); // nearest: (7,5)
+        assertEquals(1 + 3 * 3, d.getPixel(8, 2)); // nearest: (7,5)
+        assertEquals(1 + 5 * 5, d.getPixel(0, 6)); // nearest: (1,1)
+        Map2D c = m.distanceTransform(5, true);
+        assertEquals(2 * 2 + 1, c.getPixel(8, 2)); // (1,1) around the right edge
+        assertEquals(1 + 2 * 2, c.getPixel(0, 6)); // (1,1) around the bottom edge
+        assertEquals(1 + 1, c.getPixel(8, 6));
+        assertEquals(-1, new Map(4, 3, 0).distanceTransform(5, true).getPixel(2, 2)); // no obstacles
+    }
+
+    @Test
+    void labelComponentsCountsRegions() {
+        Map m = new Map(10, 150, 0); // taller than a band of rows
+        m.drawLine(new Index2D(0, 70), new Index2D(9, 70), 1); // a wall across the map
+        m.setPixel(5, 20, 1); // an island
+        m.setPixel(6, 21, 1); // touches the island diagonally
+        Components c4 = m.labelComponents(false, 4);
+        assertEquals(5, c4.getCount()); // above, below, the wall and the two island pixels
+        Map2D labels = c4.getLabels();
+        assertEquals(0, labels.getPixel(0, 0));
+        assertEquals(labels.getPixel(9, 69), labels.getPixel(0, 0));
+        assertNotEquals(labels.getPixel(0, 71), labels.getPixel(0, 0));
+        assertEquals(4, m.labelComponents(false, 8).getCount()); // the island is one
+        assertEquals(3, m.labelComponents(true, 8).getCount()); // above and below meet around the edge
+        assertEquals(m.fill(new Index2D(0, 0), 7, false), count(labels, labels.getPixel(0, 0)));
+        assertThrows(IllegalArgumentException.class, () -> m.labelComponents(false, 6));
+    }
+
+    @Test
+    void reachabilityFollowsObstacleChanges() {
+        Map m = new Map(10, 10, 0);
+        m.drawLine(new Index2D(5, 0), new Index2D(5, 9), 1); // a wall down the middle
+        Pixel2D a = new Index2D(1, 1), b = new Index2D(8, 8);
+        assertFalse(m.isReachable(a, b, 1, false));
+        assertTrue(m.isReachable(a, b, 1, true)); // around the edge
+        assertNotNull(m.shortestPath(a, b, 1, true));
+        assertFalse(m.isReachable(a, new Index2D(5, 5), 1, false)); // on the wall
+        assertFalse(m.isReachable(a, new Index2D(10, 1), 1, false)); // outside
+        m.setPixel(5, 4, 0); // a door
+        assertTrue(m.isReachable(a, b, 1, false));
+        m.setPixel(5, 4, 1); // closed again
+        assertFalse(m.isReachable(a, b, 1, false));
+        assertNull(m.shortestPath(a, b, 1, false));
+        m.setPixel(5, 0, 0); // a door in the corner of the wall
+        assertTrue(m.isReachable(a, b, 1, false));
+        assertNotNull(m.shortestPath(a, b, 1, false));
+        try (ReachabilityIndex r = new ReachabilityIndex(m, 0, false)) { // the free pixels are the 1s
+            assertTrue(r.isReachable(new Index2D(5, 1), new Index2D(5, 9)));
+            assertFalse(r.isReachable(new Index2D(5, 0), new Index2D(5, 1)));
+        }
+    }
+
+    @Test
+    void altLandmarksGiveShortestPaths() {
+        Map m = new Map(31, 21, 0);
+        for (int x = 3; x < 31; x += 6) { // a serpentine of walls
+            m.drawLine(new Index2D(x, 0), new Index2D(x, 17), 1);
+            m.drawLine(new Index2D(x + 3, 3), new Index2D(x + 3, 20), 1);
+        }
+        m.setPathEngine(PathEngine.ALT);
+        Pixel2D a = new Index2D(0, 20), b = new Index2D(30, 0);
+        for (boolean cyclic : new boolean[]{false, true}) {
+            assertEquals(m.shortestPath(a, b, 1, cyclic, PathEngine.BFS).length, m.shortestPath(a, b, 1, cyclic).length);
+        }
+        Landmarks l = m.buildLandmarks(1, false, 4);
+        assertEquals(4, l.getCount());
+        m.setPixel(30, 1, 1);
+        m.setPixel(29, 0, 1);
+        m.setPixel(29, 1, 1); // b is walled in: the landmarks are rebuilt
+        assertNull(m.shortestPath(a, b, 1, false));
+
+        int[] v = new int[31 * 21]; // 4-connectivity: the path length is the allDistance distance + 1
+        for (int y = 0; y < 21; y++) {
+            for (int x = 0; x < 31; x++) {
+                v[y * 31 + x] = m.getPixel(x, y);
+            }
+        }
+        Map2D dist = new Map(31, 21, v).allDistance(a, 1, false);
+        Landmarks four = Landmarks.build(v, 31, 21, 1, false, 4, 3);
+        Pixel2D c = new Index2D(25, 10);
+        assertEquals(dist.getPixel(c) + 1, four.shortestPath(v, a, c).length);
+        assertEquals(1, Landmarks.build(new int[]{0, 1}, 2, 1, 1, false, 8, 5).getCount()); // one free pixel
+    }
+
+    @Test
+    void hierarchicalPlannerFindsNearShortestPaths() {
+        Map m = new Map(64, 48, 0);
+        m.drawLine(new Index2D(20, 0), new Index2D(20, 40), 1); // two walls across several clusters
+        m.drawLine(new Index2D(44, 8), new Index2D(44, 47), 1);
+        Pixel2D a = new Index2D(2, 2), b = new Index2D(60, 45);
+        try (HierarchicalPlanner planner = new HierarchicalPlanner(m, 1, false, 8)) {
+            Pixel2D[] p = planner.findPath(a, b);
+            int shortest = m.shortestPath(a, b, 1, false).length;
+            assertEquals(a, p[0]);
+            assertEquals(b, p[p.length - 1]);
+            assertTrue(p.length >= shortest && p.length <= shortest * 11 / 10, p.length + " vs " + shortest);
+            for (int i = 1; i < p.length; i++) {
+                assertEquals(1, Math.max(Math.abs(p[i].getX() - p[i - 1].getX()), Math.abs(p[i].getY() - p[i - 1].getY())));
+                assertNotEquals(1, m.getPixel(p[i]));
+            }
+            assertEquals(48, planner.getRebuilt()); // the first query builds every cluster
+            m.drawLine(new Index2D(20, 41), new Index2D(20, 47), 1); // close the first wall
+            assertNull(planner.findPath(a, b));
+            assertTrue(planner.getRebuilt() <= 2); // the cluster of the new wall (and a neighbor whose nodes changed)
+            m.setPixel(20, 4, 0); // a door at the top
+            assertNotNull(planner.findPath(a, b));
+        }
+    }
+
+    @Test
+    void corridorGraphContractsMazes() {
+        int w = 41, h = 21;
+        int[] v = new int[w * h]; // a comb: walls on every other column, open alternately at the top and bottom
+        for (int x = 1; x < w; x += 2) {
+            for (int y = 0; y < h; y++) {
+                if (y != (x % 4 == 1 ? h - 1 : 0)) v[y * w + x] = 1;
+            }
+        }
+        CorridorGraph g = CorridorGraph.build(v, w, h, 1, false);
+        assertTrue(g.getNodeCount() * 10 < w * h / 2, g.getNodeCount() + " nodes");
+        Map m = new Map(w, h, v);
+        Pixel2D a = new Index2D(0, 0), b = new Index2D(w - 1, 7), door = new Index2D(1, h - 1);
+        for (boolean cyclic : new boolean[]{false, true}) {
+            for (Pixel2D[] q : new Pixel2D[][]{{a, b}, {b, a}, {a, door}, {door, b}}) {
+                Pixel2D[] p = m.shortestPath(q[0], q[1], 1, cyclic, PathEngine.CORRIDOR);
+                assertEquals(m.shortestPath(q[0], q[1], 1, cyclic, PathEngine.BFS).length, p.length);
+                assertEquals(q[0], p[0]);
+                assertEquals(q[1], p[p.length - 1]);
+                for (int i = 1; i < p.length; i++) {
+                    assertNotEquals(1, m.getPixel(p[i]));
+                }
+            }
+        }
+        m.setPixel(1, h - 1, 1); // the only opening of the first wall: the graph is rebuilt
+        assertNull(m.shortestPath(a, b, 1, false, PathEngine.CORRIDOR));
+    }
+
+    private static int count(Map2D map, int value) {
+        int ans = 0;
+        for (int y = 0; y < map.getHeight(); y++) {
+            for (int x = 0; x < map.getWidth(); x++) {
+                if (map.getPixel(x, y) == value) ans++;
+            }
+        }
+        return ans;
+    }
+}
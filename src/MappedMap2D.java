@@ -0,0 +1,204 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A Map2D backed by a memory-mapped binary raster file.
+ * Opening a map is O(1): pages are loaded lazily by the OS as pixels are read, and every
+ * setPixel (or draw, fill...) writes through to the file. Several processes mapping the same
+ * file share its pages (through the page cache).
+ * File format (little endian ints): MAGIC, width, height, 0 (reserved), then width*height pixels, row-major.
+ * Note: like OffHeapMap2D, a MappedMap2D should be close()d - this also closes the file.
+ */
+public class MappedMap2D extends OffHeapMap2D {
+
+    public static final int MAGIC = 0x4D324431; // "M2D1"
+    private static final long HEADER = 4L * Integer.BYTES;
+
+    private final Path file;
+    private transient FileChannel channel;
+
+    private MappedMap2D(Path file, FileChannel channel)
+    {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    /**
+     * Maps an existing binary raster file (read-write).
+     * @param file the raster file (as written by create).
+     * @return a map over the file's pixels.
+     * @throws IOException if the file can not be opened or is not a valid raster file.
+     */
+    public static MappedMap2D open(Path file) throws IOException
+    {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try
+        {
+            long size = ch.size();
+            if (size < HEADER)
+            {
+                throw new IOException("Not a raster file (too short): " + file);
+            }
+            MappedMap2D ans = new MappedMap2D(file, ch);
+            Arena arena = Arena.ofShared();
+            MemorySegment all = ch.map(FileChannel.MapMode.READ_WRITE, 0, size, arena);
+            int w = all.getAtIndex(PIXEL, 1), h = all.getAtIndex(PIXEL, 2);
+            if (all.getAtIndex(PIXEL, 0) != MAGIC || w <= 0 || h <= 0 || size != HEADER + (long) w * h * Integer.BYTES)
+            {
+                arena.close();
+                throw new IOException("Not a valid raster file: " + file);
+            }
+            ans.adopt(arena, all.asSlice(HEADER), w, h);
+            return ans;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            ch.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates (or overwrites) a binary raster file of w*h pixels all set to v, and maps it.
+     * @throws IOException if the file can not be created.
+     */
+    public static MappedMap2D create(Path file, int w, int h, int v) throws IOException
+    {
+        MappedMap2D ans = new MappedMap2D(file, FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE));
+        try
+        {
+            ans.init(w, h, v);
+        }
+        catch (RuntimeException e)
+        {
+            ans.close();
+            throw e;
+        }
+        return ans;
+    }
+
+    /**
+     * Creates (or overwrites) a binary raster file with a copy of the given map, and maps it.
+     * @throws IOException if the file can not be created.
+     */
+    public static MappedMap2D create(Path file, Map2D map) throws IOException
+    {
+        MappedMap2D ans = create(file, map.getWidth(), map.getHeight(), 0);
+        for (int y = 0; y < ans.h; y++)
+        {
+            for (int x = 0; x < ans.w; x++)
+            {
+                ans.put(x, y, map.getPixel(x, y));
+            }
+        }
+        return ans;
+    }
+
+    /**
+     * @return the raster file of this map.
+     */
+    public Path getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Forces all the changes made to this map to be written to the storage device.
+     */
+    public void flush()
+    {
+        segment().force();
+    }
+
+    /**
+     * Unmaps the file and closes it.
+     */
+    @Override
+    public void close()
+    {
+        super.close();
+        try
+        {
+            if (channel != null)
+            {
+                channel.close();
+                channel = null;
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    ////////////////////// Storage /////////////////////////
+    /**
+     * Resizes the file to w*h pixels (all set to v) and maps it.
+     */
+    @Override
+    protected void allocate(int w, int h, int v)
+    {
+        super.close(); // unmap the current pixels (not needed anymore), the file stays open
+        Arena arena = Arena.ofShared();
+        MemorySegment seg = mapFile(arena, w, h);
+        if (v == 0)
+        {
+            seg.fill((byte) 0);
+        }
+        else
+        {
+            for (long i = 0, n = (long) w * h; i < n; i++)
+            {
+                seg.setAtIndex(PIXEL, i, v);
+            }
+        }
+        adopt(arena, seg, w, h);
+    }
+
+    @Override
+    public void rescale(double sx, double sy) {
+        super.rescale(sx, sy); // resamples into anonymous off-heap memory (and unmaps the file)
+        Arena arena = Arena.ofShared();
+        MemorySegment seg = mapFile(arena, w, h);
+        seg.copyFrom(segment());
+        adopt(arena, seg, w, h); // releases the anonymous copy
+    }
+
+    /**
+     * Resizes the (unmapped) file to hold a w*h raster, maps it and writes its header.
+     * @param arena the arena which will own the mapping.
+     * @return the mapped (uninitialized) pixels.
+     */
+    private MemorySegment mapFile(Arena arena, int w, int h)
+    {
+        if (channel == null)
+        {
+            throw new IllegalStateException("MappedMap2D was closed");
+        }
+        try
+        {
+            long size = HEADER + (long) w * h * Integer.BYTES;
+            if (channel.size() > size)
+            {
+                channel.truncate(size); // mapping only grows a file
+            }
+            MemorySegment all = channel.map(FileChannel.MapMode.READ_WRITE, 0, size, arena);
+            all.setAtIndex(PIXEL, 0, MAGIC);
+            all.setAtIndex(PIXEL, 1, w);
+            all.setAtIndex(PIXEL, 2, h);
+            all.setAtIndex(PIXEL, 3, 0);
+            return all.asSlice(HEADER);
+        }
+        catch (IOException e)
+        {
+            arena.close();
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+import java.util.Arrays;
+
+/**
+ * The pixel storage shared by ByteMap2D and ShortMap2D: a flat row-major array of the narrowest of byte, short
+ * and int which holds every value written so far. A map starts at the width of its class; a value which does
+ * not fit (setPixel, addMap2D, mul, draw...) widens it only as far as needed - a byte map which gets values of
+ * a few hundred moves to shorts, and only a value beyond the short range moves it to ints.
+ * The values never change by widening.
+ */
+abstract class NarrowMap2D extends AbstractMap2D {
+
+    private final int narrowest; // the bytes per pixel of the class: 1 or 2
+    // flat row-major pixels: (x,y) is at [y*w+x], in exactly one of the arrays (the others are null)
+    private byte[] b;
+    private short[] s;
+    private int[] wide;
+
+    /**
+     * @param narrowest the bytes per pixel the maps of the sub-class start with (1 or 2).
+     */
+    NarrowMap2D(int narrowest)
+    {
+        this.narrowest = narrowest;
+    }
+
+    /**
+     * @return the bytes per pixel needed to store v: 1, 2 or 4.
+     */
+    static int bytesFor(int v)
+    {
+        if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE) return 1;
+        return v >= Short.MIN_VALUE && v <= Short.MAX_VALUE ? 2 : 4;
+    }
+
+    /**
+     * @return the bytes per pixel of the current storage: 1, 2 or 4.
+     */
+    public int getBytesPerPixel()
+    {
+        return b != null ? 1 : s != null ? 2 : 4;
+    }
+
+    /**
+     * @return true iff this map was widened beyond the storage of its class (a value did not fit it).
+     */
+    public boolean isWidened()
+    {
+        return getBytesPerPixel() > narrowest;
+    }
+
+    @Override
+    protected void allocate(int w, int h, int v)
+    {
+        this.w = w;
+        this.h = h;
+        b = null;
+        s = null;
+        wide = null;
+        switch (Math.max(narrowest, bytesFor(v)))
+        {
+            case 1:
+                b = new byte[w * h];
+                Arrays.fill(b, (byte) v);
+                break;
+            case 2:
+                s = new short[w * h];
+                Arrays.fill(s, (short) v);
+                break;
+            default:
+                wide = new int[w * h];
+                Arrays.fill(wide, v);
+        }
+    }
+
+    @Override
+    protected int get(int x, int y)
+    {
+        final int i = y * w + x;
+        return b != null ? b[i] : s != null ? s[i] : wide[i];
+    }
+
+    @Override
+    protected void put(int x, int y, int value)
+    {
+        final int i = y * w + x, bytes = bytesFor(value);
+        if (bytes > getBytesPerPixel()) widen(bytes);
+        if (b != null)
+        {
+            b[i] = (byte) value;
+        }
+        else if (s != null)
+        {
+            s[i] = (short) value;
+        }
+        else
+        {
+            wide[i] = value;
+        }
+    }
+
+    /**
+     * Copies the storage to bytes (2 or 4) per pixel (on the first value which overflows the current one).
+     */
+    private void widen(int bytes)
+    {
+        final int n = w * h;
+        if (bytes == 2)
+        {
+            s = new short[n];
+            for (int i = 0; i < n; i++)
+            {
+                s[i] = b[i];
+            }
+        }
+        else
+        {
+            wide = new int[n];
+            for (int i = 0; i < n; i++)
+            {
+                wide[i] = b != null ? b[i] : s[i];
+            }
+            s = null;
+        }
+        b = null;
+    }
+}
@@ -0,0 +1,371 @@
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+
+/**
+ * A Map2D which keeps its pixels outside of the Java heap (a native MemorySegment),
+ * so it can hold rasters larger than the heap (w*h may exceed Integer.MAX_VALUE) without GC pressure.
+ * The algorithms (fill, shortestPath, allDistance) also use off-heap scratch memory only.
+ * Note:
+ * 1. The native memory is released by close() - any access after that throws IllegalStateException.
+ * 2. allDistance returns a new OffHeapMap2D, which should be closed by the caller as well.
+ * 3. getMap() copies the whole map to the heap, so it is only useful for maps which fit in it.
+ */
+public class OffHeapMap2D extends AbstractMap2D implements AutoCloseable {
+
+    // Fixed (little endian) byte order, so the same layout can be used for files (see MappedMap2D)
+    protected static final ValueLayout.OfInt PIXEL = ValueLayout.JAVA_INT.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    private transient Arena arena; // owns the pixel memory, closed on re-allocation and on close()
+    private transient MemorySegment v; // w*h ints, pixel (x,y) at index (long)y*w+x
+
+    /**
+     * Constructs a w*h off-heap map with an init value v.
+     */
+    public OffHeapMap2D(int w, int h, int v)
+    {
+        init(w, h, v);
+    }
+
+    /**
+     * Constructs an off-heap map from a given 2D (row-major) array.
+     */
+    public OffHeapMap2D(int[][] data)
+    {
+        init(data);
+    }
+
+    /**
+     * An empty (w=h=0, no storage) map - for sub-classes which set up their own storage with adopt().
+     */
+    protected OffHeapMap2D()
+    {
+    }
+
+    /**
+     * Releases the native memory of this map.
+     */
+    @Override
+    public void close()
+    {
+        if (arena != null)
+        {
+            arena.close();
+            arena = null;
+            v = null;
+        }
+    }
+
+    /**
+     * @return true iff this map was not closed yet.
+     */
+    public boolean isOpen()
+    {
+        return arena != null;
+    }
+
+    ////////////////////// Storage /////////////////////////
+    @Override
+    protected void allocate(int w, int h, int v)
+    {
+        Arena next = Arena.ofShared();
+        MemorySegment seg = next.allocate((long) w * h * PIXEL.byteSize(), PIXEL.byteAlignment());
+        if (v == 0)
+        {
+            seg.fill((byte) 0);
+        }
+        else
+        {
+            for (long i = 0, n = (long) w * h; i < n; i++)
+            {
+                seg.setAtIndex(PIXEL, i, v);
+            }
+        }
+        adopt(next, seg, w, h);
+    }
+
+    @Override
+    protected int get(int x, int y)
+    {
+        return segment().getAtIndex(PIXEL, (long) y * w + x);
+    }
+
+    @Override
+    protected void put(int x, int y, int value)
+    {
+        segment().setAtIndex(PIXEL, (long) y * w + x, value);
+    }
+
+    @Override
+    public void rescale(double sx, double sy) {
+        if (sx <= 0 || sy <= 0) throw new IllegalArgumentException("scale factors must be > 0");
+        int newW = Math.max(1, (int) Math.round(w * sx));
+        int newH = Math.max(1, (int) Math.round(h * sy));
+
+        // Nearest neighbor resampling straight into a new off-heap segment
+        Arena next = Arena.ofShared();
+        MemorySegment out = next.allocate((long) newW * newH * PIXEL.byteSize(), PIXEL.byteAlignment());
+        for (int ny = 0; ny < newH; ny++) {
+            int oy = Math.min(h - 1, (int) Math.round(ny / sy));
+            for (int nx = 0; nx < newW; nx++) {
+                int ox = Math.min(w - 1, (int) Math.round(nx / sx));
+                out.setAtIndex(PIXEL, (long) ny * newW + nx, get(ox, oy));
+            }
+        }
+        adopt(next, out, newW, newH);
+    }
+
+    ////////////////////// Algorithms /////////////////////////
+    /**
+     * BFS fill (4-connectivity) - recolored pixels are their own visited mark,
+     * the queue is an off-heap ring buffer.
+     */
+    @Override
+    public int fill(Pixel2D xy, int new_v, boolean cyclic) {
+        final int fx = xy.getX(), fy = xy.getY();
+        if (!inBounds(fx, fy)) return 0;
+        final int old = get(fx, fy);
+        if (old == new_v) return 0;
+
+        int ans = 0;
+        try (LongQueue q = new LongQueue())
+        {
+            put(fx, fy, new_v);
+            ans++;
+            q.add((long) fy * w + fx);
+            while (!q.isEmpty()) {
+                long cur = q.remove();
+                int x = (int) (cur % w), y = (int) (cur / w);
+                for (int[] d : DIRS4) {
+                    int nx = x + d[0], ny = y + d[1];
+                    if (cyclic) {
+                        nx = (nx + w) % w;
+                        ny = (ny + h) % h;
+                    } else if (nx < 0 || nx >= w || ny < 0 || ny >= h) {
+                        continue;
+                    }
+                    if (get(nx, ny) == old) {
+                        put(nx, ny, new_v);
+                        ans++;
+                        q.add((long) ny * w + nx);
+                    }
+                }
+            }
+        }
+        return ans;
+    }
+
+    /**
+     * BFS shortest path (8-connectivity, like Map). Instead of parent coordinates,
+     * each visited pixel keeps the (1 byte) index of the move which reached it.
+     */
+    @Override
+    public Pixel2D[] shortestPath(Pixel2D p1, Pixel2D p2, int obsColor, boolean cyclic) {
+        if (p1 == null || p2 == null) return null;
+        final int sx = p1.getX(), sy = p1.getY(), ex = p2.getX(), ey = p2.getY();
+        if (!inBounds(sx, sy) || !inBounds(ex, ey)) return null;
+        if (get(sx, sy) == obsColor || get(ex, ey) == obsColor) return null;
+        if (sx == ex && sy == ey) return new Pixel2D[]{p1};
+
+        final byte START = (byte) (DIRS8.length + 1);
+        try (Arena scratch = Arena.ofConfined(); LongQueue q = new LongQueue())
+        {
+            // move[i] == 0: not visited, START: the source, else 1 + the index of the move into i
+            MemorySegment move = scratch.allocate((long) w * h);
+            move.fill((byte) 0);
+            move.set(ValueLayout.JAVA_BYTE, (long) sy * w + sx, START);
+            q.add((long) sy * w + sx);
+            boolean found = false;
+            while (!q.isEmpty() && !found) {
+                long cur = q.remove();
+                int x = (int) (cur % w), y = (int) (cur / w);
+                for (int k = 0; k < DIRS8.length; k++) {
+                    int nx = x + DIRS8[k][0], ny = y + DIRS8[k][1];
+                    if (cyclic) {
+                        nx = (nx + w) % w;
+                        ny = (ny + h) % h;
+                    } else if (nx < 0 || nx >= w || ny < 0 || ny >= h) {
+                        continue;
+                    }
+                    long ni = (long) ny * w + nx;
+                    if (move.get(ValueLayout.JAVA_BYTE, ni) == 0 && get(nx, ny) != obsColor) {
+                        move.set(ValueLayout.JAVA_BYTE, ni, (byte) (k + 1));
+                        if (nx == ex && ny == ey) {
+                            found = true;
+                            break;
+                        }
+                        q.add(ni);
+                    }
+                }
+            }
+            if (!found) return null;
+
+            // Walk back from the end point by undoing the recorded moves
+            ArrayList<Pixel2D> path = new ArrayList<>();
+            int cx = ex, cy = ey;
+            while (true) {
+                path.add(new Index2D(cx, cy));
+                byte m = move.get(ValueLayout.JAVA_BYTE, (long) cy * w + cx);
+                if (m == START) break;
+                cx -= DIRS8[m - 1][0];
+                cy -= DIRS8[m - 1][1];
+                if (cyclic) {
+                    cx = (cx + w) % w;
+                    cy = (cy + h) % h;
+                }
+            }
+            Collections.reverse(path);
+            return path.toArray(new Pixel2D[0]);
+        }
+    }
+
+    /**
+     * BFS distance map (4-connectivity, like Map), computed directly into a new OffHeapMap2D
+     * (which doubles as the visited mark) - the caller should close() it.
+     */
+    @Override
+    public Map2D allDistance(Pixel2D start, int obsColor, boolean cyclic) {
+        final int sx = start.getX(), sy = start.getY();
+        OffHeapMap2D ans = new OffHeapMap2D(w, h, -1);
+        if (!inBounds(sx, sy)) return ans;
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                if (get(x, y) == obsColor) ans.put(x, y, obsColor); // mark obstacles
+            }
+        }
+        if (get(sx, sy) == obsColor) return ans;
+
+        try (LongQueue q = new LongQueue())
+        {
+            ans.put(sx, sy, 0);
+            q.add((long) sy * w + sx);
+            while (!q.isEmpty()) {
+                long cur = q.remove();
+                int x = (int) (cur % w), y = (int) (cur / w);
+                int next = ans.get(x, y) + 1;
+                for (int[] d : DIRS4) {
+                    int nx = x + d[0], ny = y + d[1];
+                    if (cyclic) {
+                        nx = (nx + w) % w;
+                        ny = (ny + h) % h;
+                    } else if (nx < 0 || nx >= w || ny < 0 || ny >= h) {
+                        continue;
+                    }
+                    // not visited: still -1 and not an obstacle (obstacles may be marked -1 as well)
+                    if (ans.get(nx, ny) != -1 || get(nx, ny) == obsColor) continue;
+                    ans.put(nx, ny, next);
+                    q.add((long) ny * w + nx);
+                }
+            }
+        }
+        return ans;
+    }
+
+    ////////////////////// Protected & Private Methods /////////////////////////
+    /**
+     * Replaces the storage of this map, releasing the previous one (if any).
+     * @param arena the arena owning seg - it is closed when this storage is replaced or on close().
+     * @param seg w*h pixels in the PIXEL layout, row-major.
+     * @param w the width of the map.
+     * @param h the height of the map.
+     */
+    protected void adopt(Arena arena, MemorySegment seg, int w, int h)
+    {
+        if (this.arena != null)
+        {
+            this.arena.close();
+        }
+        this.arena = arena;
+        this.v = seg;
+        this.w = w;
+        this.h = h;
+    }
+
+    /**
+     * @return the pixel storage of this map.
+     * @throws IllegalStateException if this map was closed.
+     */
+    protected MemorySegment segment()
+    {
+        if (v == null)
+        {
+            throw new IllegalStateException("OffHeapMap2D was closed");
+        }
+        return v;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException
+    {
+        throw new NotSerializableException("OffHeapMap2D keeps its pixels off-heap - use GUI.saveMap instead");
+    }
+
+    /**
+     * A FIFO queue of longs in an off-heap ring buffer, which doubles its capacity when full.
+     */
+    private static final class LongQueue implements AutoCloseable {
+        private Arena arena;
+        private MemorySegment buf;
+        private long capacity, head, size;
+
+        LongQueue()
+        {
+            allocate(1 << 16);
+        }
+
+        boolean isEmpty()
+        {
+            return size == 0;
+        }
+
+        void add(long a)
+        {
+            if (size == capacity)
+            {
+                grow();
+            }
+            buf.setAtIndex(ValueLayout.JAVA_LONG, (head + size) % capacity, a);
+            size++;
+        }
+
+        long remove()
+        {
+            long a = buf.getAtIndex(ValueLayout.JAVA_LONG, head);
+            head = (head + 1) % capacity;
+            size--;
+            return a;
+        }
+
+        private void allocate(long cap)
+        {
+            arena = Arena.ofConfined();
+            buf = arena.allocate(cap * Long.BYTES, Long.BYTES);
+            capacity = cap;
+            head = 0;
+        }
+
+        private void grow()
+        {
+            Arena oldArena = arena;
+            MemorySegment old = buf;
+            long oldCap = capacity, oldHead = head;
+            allocate(oldCap * 2);
+            // unroll the ring: [head..end) then [0..head)
+            long first = oldCap - oldHead;
+            MemorySegment.copy(old, oldHead * Long.BYTES, buf, 0, first * Long.BYTES);
+            MemorySegment.copy(old, 0, buf, first * Long.BYTES, oldHead * Long.BYTES);
+            oldArena.close();
+        }
+
+        @Override
+        public void close()
+        {
+            arena.close();
+        }
+    }
+}
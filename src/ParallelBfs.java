@@ -0,0 +1,271 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A parallel BFS distance map (4-connectivity) over a flat row-major int[] map of w*h pixels - the same result
+ * as GridBfs.distances (see Map.allDistance), computed layer by layer by the workers of a ForkJoinPool.
+ * The map is partitioned into TILE x TILE tiles, and every layer only visits the tiles which have frontier
+ * pixels; the tasks of one layer process different tiles concurrently, and the layers are separated by the
+ * join (which publishes all the writes of a layer to the next one).
+ * A tile task only writes the distances of its own pixels: a step which crosses into a neighbor tile is put
+ * in the task's outbox towards that tile, and the neighbor claims the pixel (if it is still unvisited) in the
+ * next layer - with its distance set to the layer it was reached in. So no two tasks write the same memory,
+ * and no atomic operations are needed. The frontier buffers are double-buffered by the parity of the layer.
+ */
+public final class ParallelBfs {
+
+    public static final int TILE = 64;
+    private static final int LEAF = 4; // a task processes up to this many tiles without forking
+
+    private final int[] v, dist;
+    private final int w, h, tw, th, obsColor;
+    private final boolean cyclic;
+    private final Tile[] tiles;
+
+    private ParallelBfs(int[] v, int[] dist, int w, int h, int obsColor, boolean cyclic)
+    {
+        this.v = v;
+        this.dist = dist;
+        this.w = w;
+        this.h = h;
+        this.tw = (w + TILE - 1) / TILE;
+        this.th = (h + TILE - 1) / TILE;
+        this.obsColor = obsColor;
+        this.cyclic = cyclic;
+        this.tiles = new Tile[tw * th];
+    }
+
+    /**
+     * Parallel BFS distance map (4-connectivity) from (sx,sy) avoiding obsColor, on the common pool:
+     * unreachable pixels are -1 and obstacles are marked with obsColor.
+     * @return a new w*h (row-major) distance array.
+     */
+    public static int[] distances(int[] v, int w, int h, int sx, int sy, int obsColor, boolean cyclic)
+    {
+        boolean inside = sx >= 0 && sx < w && sy >= 0 && sy < h;
+        return distances(v, w, h, new int[]{inside ? sy * w + sx : -1}, obsColor, cyclic, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parallel multi-source BFS distance map (4-connectivity) avoiding obsColor on the given pool - the distance
+     * of every pixel from its nearest seed, as GridBfs.distances(v, w, h, seeds, obsColor, cyclic, null).
+     * @param seeds the packed y*w+x indices of the seeds (-1 for a seed outside the map).
+     * @param pool the pool whose workers expand the frontier tiles.
+     * @return a new w*h (row-major) distance array.
+     */
+    public static int[] distances(int[] v, int w, int h, int[] seeds, int obsColor, boolean cyclic, ForkJoinPool pool)
+    {
+        final int[] dist = new int[w * h];
+        for (int i = 0; i < dist.length; i++)
+        {
+            dist[i] = v[i] == obsColor ? obsColor : -1;
+        }
+        new ParallelBfs(v, dist, w, h, obsColor, cyclic).run(seeds, pool);
+        return dist;
+    }
+
+    /**
+     * The frontier buffers of a tile, by layer parity: the pixels it reached itself, and its outboxes
+     * (pixels of the neighbor tile in direction d, which it stepped into).
+     */
+    private static final class Tile {
+        final IntList[] own = {new IntList(), new IntList()};
+        final IntList[][] out = new IntList[2][4];
+
+        Tile()
+        {
+            for (int p = 0; p < 2; p++)
+            {
+                for (int d = 0; d < 4; d++)
+                {
+                    out[p][d] = new IntList();
+                }
+            }
+        }
+    }
+
+    /**
+     * A growable list of ints.
+     */
+    private static final class IntList {
+        int[] a = new int[16];
+        int size;
+
+        void add(int x)
+        {
+            if (size == a.length) a = java.util.Arrays.copyOf(a, size * 2);
+            a[size++] = x;
+        }
+    }
+
+    /**
+     * The BFS: layer 0 is the seeds, and layer l+1 is expanded from layer l once all of its tiles are done.
+     */
+    private void run(int[] seeds, ForkJoinPool pool)
+    {
+        int[] active = new int[16], nextActive = new int[16];
+        int activeSize = 0;
+        int[] mark = new int[tiles.length]; // mark[t] == layer+1 iff tile t is already in the next active list
+        for (int seed : seeds)
+        {
+            if (seed < 0 || v[seed] == obsColor || dist[seed] == 0) continue; // outside, an obstacle or a repeated seed
+            dist[seed] = 0;
+            int t = tileOf(seed);
+            if (tile(t).own[0].size == 0)
+            {
+                if (activeSize == active.length) active = java.util.Arrays.copyOf(active, activeSize * 2);
+                active[activeSize++] = t;
+            }
+            tiles[t].own[0].add(seed);
+        }
+        for (int layer = 0; activeSize > 0; layer++)
+        {
+            // 1. Expand the frontier of every active tile, concurrently
+            final int n = activeSize;
+            if (n <= LEAF) new Layer(active, 0, n, layer).compute(); // not worth the forking
+            else pool.invoke(new Layer(active, 0, n, layer));
+
+            // 2. The next active tiles: those which reached pixels of their own, and the targets of the outboxes
+            int q = (layer + 1) & 1, nextSize = 0;
+            for (int k = 0; k < n; k++)
+            {
+                int t = active[k];
+                Tile tile = tiles[t];
+                for (int d = -1; d < 4; d++)
+                {
+                    IntList list = d < 0 ? tile.own[q] : tile.out[q][d];
+                    if (list.size == 0) continue;
+                    int target = d < 0 ? t : neighborTile(t, d);
+                    if (mark[target] == layer + 1) continue;
+                    mark[target] = layer + 1;
+                    if (nextSize == nextActive.length) nextActive = java.util.Arrays.copyOf(nextActive, nextSize * 2);
+                    nextActive[nextSize++] = target;
+                }
+            }
+            int[] tmp = active;
+            active = nextActive;
+            nextActive = tmp;
+            activeSize = nextSize;
+        }
+    }
+
+    /**
+     * Expands one layer for a range of the active tiles (forking the range in halves).
+     */
+    private final class Layer extends RecursiveAction {
+        private final int[] active;
+        private final int from, to, layer;
+
+        Layer(int[] active, int from, int to, int layer)
+        {
+            this.active = active;
+            this.from = from;
+            this.to = to;
+            this.layer = layer;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from <= LEAF)
+            {
+                for (int k = from; k < to; k++)
+                {
+                    expand(active[k], layer);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Layer(active, from, mid, layer), new Layer(active, mid, to, layer));
+        }
+    }
+
+    /**
+     * Expands the frontier of tile t at the given layer: its own frontier pixels and the pixels its neighbors
+     * stepped into (claimed now, if still unvisited). Only writes t's pixels and buffers.
+     */
+    private void expand(int t, int layer)
+    {
+        final int p = layer & 1, q = p ^ 1;
+        final Tile tile = tile(t);
+        final IntList own = tile.own[p], next = tile.own[q];
+        // claim the pixels stepped into from the neighbors: they were reached in this layer
+        for (int d = 0; d < 4; d++)
+        {
+            int from = neighborTile(t, opposite(d));
+            if (from < 0 || tiles[from] == null) continue;
+            IntList in = tiles[from].out[p][d];
+            for (int k = 0; k < in.size; k++)
+            {
+                int i = in.a[k];
+                if (dist[i] == -1)
+                {
+                    dist[i] = layer;
+                    own.add(i);
+                }
+            }
+            in.size = 0;
+        }
+        final int next1 = layer + 1;
+        for (int k = 0; k < own.size; k++)
+        {
+            int cur = own.a[k];
+            int x = cur % w, y = cur / w;
+            for (int d = 0; d < 4; d++)
+            {
+                int ni = GridBfs.neighbor(x, y, GridBfs.DX[d], GridBfs.DY[d], w, h, cyclic);
+                if (ni < 0 || v[ni] == obsColor || dist[ni] != -1) continue; // a racy read of another tile is only a hint
+                int nt = tileOf(ni);
+                if (nt == t)
+                {
+                    dist[ni] = next1;
+                    next.add(ni);
+                }
+                else
+                {
+                    tile.out[q][d].add(ni); // nt is neighborTile(t, d)
+                }
+            }
+        }
+        own.size = 0;
+    }
+
+    private static int opposite(int d)
+    {
+        return d ^ 1; // Right<->Left, Down<->Up
+    }
+
+    private Tile tile(int t)
+    {
+        Tile ans = tiles[t];
+        if (ans == null)
+        {
+            ans = new Tile();
+            tiles[t] = ans;
+        }
+        return ans;
+    }
+
+    private int tileOf(int i)
+    {
+        return (i / w / TILE) * tw + (i % w) / TILE;
+    }
+
+    /**
+     * @return the tile next to tile t in direction d (wrapped around if cyclic), or -1 outside the map.
+     */
+    private int neighborTile(int t, int d)
+    {
+        int tx = t % tw + GridBfs.DX[d], ty = t / tw + GridBfs.DY[d];
+        if (cyclic)
+        {
+            tx = (tx + tw) % tw;
+            ty = (ty + th) % th;
+        }
+        else if (tx < 0 || tx >= tw || ty < 0 || ty >= th)
+        {
+            return -1;
+        }
+        return ty * tw + tx;
+    }
+}
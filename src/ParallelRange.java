@@ -0,0 +1,50 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs a body over the range [0,n) on a ForkJoinPool: the range is split in halves down to leaf sized
+ * subranges, which run concurrently (used by the passes over rows / columns of DistanceTransform and
+ * ComponentLabeler). A range of at most one leaf runs in the calling thread.
+ */
+final class ParallelRange extends RecursiveAction {
+
+    /**
+     * The work on a subrange [from,to).
+     */
+    interface Body {
+        void process(int from, int to);
+    }
+
+    private final int from, to, leaf;
+    private final Body body;
+
+    private ParallelRange(int from, int to, int leaf, Body body)
+    {
+        this.from = from;
+        this.to = to;
+        this.leaf = leaf;
+        this.body = body;
+    }
+
+    /**
+     * Runs body over [0,n) in subranges of at most leaf (at least 1) entries, and waits for all of them.
+     */
+    static void run(ForkJoinPool pool, int n, int leaf, Body body)
+    {
+        ParallelRange all = new ParallelRange(0, n, Math.max(1, leaf), body);
+        if (n <= all.leaf) all.compute(); // not worth the forking
+        else pool.invoke(all);
+    }
+
+    @Override
+    protected void compute()
+    {
+        if (to - from <= leaf)
+        {
+            body.process(from, to);
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        invokeAll(new ParallelRange(from, mid, leaf, body), new ParallelRange(mid, to, leaf, body));
+    }
+}
@@ -0,0 +1,130 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs a batch of shortest path queries over a flat row-major int[] map of w*h pixels (see Map.shortestPaths).
+ * The queries which share a start, an obstacle color and cyclic form a group, answered by a single BFS which
+ * stops once all the group's goals are reached (see GridBfs.shortestPaths). The groups are searched
+ * concurrently by the workers of a ForkJoinPool, each of them with its own per-thread BfsWorkspace, so
+ * nothing is allocated per query except its path.
+ * Each path is the one GridBfs.shortestPath returns for the same query (the BFS engine of Map.shortestPath).
+ */
+public final class PathBatch {
+
+    private PathBatch() {} // static methods only
+
+    /**
+     * @param queries the queries (none of them null).
+     * @param pool the pool whose workers search the groups.
+     * @return the path of each query (inclusive, in the order of queries), null where there is none.
+     */
+    public static Pixel2D[][] shortestPaths(int[] v, int w, int h, List<PathQuery> queries, ForkJoinPool pool)
+    {
+        if (queries == null || pool == null)
+        {
+            throw new IllegalArgumentException("queries and pool can't be null");
+        }
+        final int n = queries.size();
+        final PathQuery[] qs = queries.toArray(new PathQuery[0]);
+        final int[] starts = new int[n];
+        Integer[] order = new Integer[n]; // the queries with a valid start, sorted by group
+        int size = 0;
+        for (int k = 0; k < n; k++)
+        {
+            if (qs[k] == null)
+            {
+                throw new IllegalArgumentException("query " + k + " is null");
+            }
+            starts[k] = index(qs[k].getP1(), w, h);
+            if (starts[k] >= 0 && v[starts[k]] != qs[k].getObsColor()) order[size++] = k;
+        }
+        Arrays.sort(order, 0, size, (a, b) -> {
+            int c = Integer.compare(qs[a].getObsColor(), qs[b].getObsColor());
+            if (c == 0) c = Boolean.compare(qs[a].isCyclic(), qs[b].isCyclic());
+            return c != 0 ? c : Integer.compare(starts[a], starts[b]);
+        });
+
+        // the groups are the runs of order with the same key: group g is order[bounds[g]..bounds[g+1])
+        int[] bounds = new int[size + 1];
+        int groups = 0;
+        for (int k = 0; k < size; k++)
+        {
+            int a = order[k];
+            if (k == 0 || starts[a] != starts[order[k - 1]] || qs[a].getObsColor() != qs[order[k - 1]].getObsColor()
+                    || qs[a].isCyclic() != qs[order[k - 1]].isCyclic())
+            {
+                bounds[groups++] = k;
+            }
+        }
+        bounds[groups] = size;
+
+        final Pixel2D[][] ans = new Pixel2D[n][];
+        Search all = new Search(v, w, h, qs, starts, order, bounds, 0, groups, ans);
+        if (groups <= 1) all.compute(); // nothing to run in parallel
+        else pool.invoke(all);
+        return ans;
+    }
+
+    /**
+     * Searches a range of the groups (forking the range in halves), each group into the answers of its queries.
+     */
+    private static final class Search extends RecursiveAction {
+        private final int[] v, starts, bounds;
+        private final int w, h, from, to;
+        private final PathQuery[] qs;
+        private final Integer[] order;
+        private final Pixel2D[][] ans;
+
+        Search(int[] v, int w, int h, PathQuery[] qs, int[] starts, Integer[] order, int[] bounds, int from, int to, Pixel2D[][] ans)
+        {
+            this.v = v;
+            this.w = w;
+            this.h = h;
+            this.qs = qs;
+            this.starts = starts;
+            this.order = order;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+            this.ans = ans;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from > 1)
+            {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Search(v, w, h, qs, starts, order, bounds, from, mid, ans),
+                        new Search(v, w, h, qs, starts, order, bounds, mid, to, ans));
+                return;
+            }
+            for (int g = from; g < to; g++)
+            {
+                int lo = bounds[g], hi = bounds[g + 1];
+                PathQuery first = qs[order[lo]];
+                int[] goals = new int[hi - lo];
+                for (int k = lo; k < hi; k++)
+                {
+                    goals[k - lo] = index(qs[order[k]].getP2(), w, h);
+                }
+                Pixel2D[][] paths = GridBfs.shortestPaths(v, w, h, starts[order[lo]], goals, first.getObsColor(), first.isCyclic());
+                for (int k = lo; k < hi; k++)
+                {
+                    ans[order[k]] = paths[k - lo];
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the packed y*w+x index of p, or -1 if it is outside the map.
+     */
+    private static int index(Pixel2D p, int w, int h)
+    {
+        int x = p.getX(), y = p.getY();
+        return x >= 0 && x < w && y >= 0 && y < h ? y * w + x : -1;
+    }
+}
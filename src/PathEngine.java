@@ -0,0 +1,23 @@
+/**
+ * The search algorithms which Map.shortestPath can use - all of them return a shortest path
+ * (the same number of steps), they only differ in how much of the map they expand.
+ * The engine can be chosen per map (Map.setPathEngine) or per call.
+ */
+public enum PathEngine {
+    /** Single-ended BFS from p1 (the default). */
+    BFS,
+    /** BFS from both p1 and p2, alternating layers, until the two frontiers meet. */
+    BIDIRECTIONAL,
+    /** A* from p1, guided by the (torus aware when cyclic) octile distance to p2. */
+    ASTAR,
+    /** Jump Point Search: A* which jumps along straight and diagonal lines to the next decision pixel. */
+    JPS,
+    /** JPS with jump distances precomputed per map (rebuilt after the map changes), so each jump is O(1). */
+    JPS_PLUS,
+    /** A* guided by the distances from landmark pixels (see Landmarks), precomputed per map and rebuilt after the map changes. */
+    ALT,
+    /** A* over the junctions and dead ends of the map, its corridors contracted into weighted edges (see CorridorGraph), precomputed per map and rebuilt after the map changes. */
+    CORRIDOR,
+    /** Single-ended BFS from p1 which expands each layer top-down or bottom-up, whichever is cheaper (see DirectionOptimizingBfs). */
+    DIRECTION_OPTIMIZING
+}
@@ -0,0 +1,344 @@
+/**
+ * A persistent shortest path planner bound to a Map, a start, a goal and an obstacle color, which repairs
+ * its path incrementally when pixels change (D* Lite, Koenig &amp; Likhachev 2002) instead of searching again.
+ * The planner searches backwards from the goal: g[i] is the number of steps from pixel i to the goal and
+ * rhs[i] its one step look-ahead (1 + the smallest g of i's free neighbors). After a change only the pixels
+ * whose g is affected become inconsistent (g != rhs) and are re-expanded, in the order of their distance
+ * (plus the octile heuristic towards the start), until the start is consistent again - so the cost of a
+ * repair scales with the region of the map whose distances the change affects, not with the map area.
+ * Moves are 8-connected with one step each (as Map.shortestPath), also when cyclic.
+ *
+ * The planner listens to the map (see MapListener): single pixel changes (setPixel, the drawing methods)
+ * are queued and repaired by the next getPath; bulk changes (init, fill, mul, addMap2D, rescale) restart
+ * the search from scratch. close() detaches the planner from its map.
+ * https://en.wikipedia.org/wiki/D*#D*_Lite
+ */
+public final class PathPlanner implements MapListener, AutoCloseable {
+
+    private static final int INF = Integer.MAX_VALUE / 4; // the g of an unreachable pixel
+
+    private final Map map;
+    private final int obsColor;
+    private final boolean cyclic;
+    private final int goalX, goalY;
+    private int startX, startY;
+
+    private int w, h, goal, start;
+    private int last; // the start when the key offset km was last updated
+    private int km; // the key offset: the sum of the heuristic distances the start moved
+    private int[] g = new int[0], rhs = new int[0];
+    private long[] queued = new long[0]; // the key of the live queue entry of each pixel, or -1
+    private final IndexHeap open = new IndexHeap();
+    private int[] pending = new int[16]; // pixels changed since the last repair
+    private int pendingSize;
+    private boolean restart = true; // the search has to be (re)started from scratch
+    private boolean closed;
+    private long expanded; // the number of pixels expanded by the last getPath
+
+    /**
+     * Creates a planner and registers it as a listener of the map.
+     * @param map the map to plan over.
+     * @param start the start pixel (may be moved later with setStart).
+     * @param goal the goal pixel.
+     * @param obsColor the color of the obstacles.
+     * @param cyclic whether the map wraps around its edges.
+     */
+    public PathPlanner(Map map, Pixel2D start, Pixel2D goal, int obsColor, boolean cyclic)
+    {
+        if (map == null || start == null || goal == null)
+        {
+            throw new IllegalArgumentException("map, start and goal can't be null");
+        }
+        this.map = map;
+        this.obsColor = obsColor;
+        this.cyclic = cyclic;
+        this.goalX = goal.getX();
+        this.goalY = goal.getY();
+        this.startX = start.getX();
+        this.startY = start.getY();
+        map.addMapListener(this);
+    }
+
+    /**
+     * Repairs the path after the changes of the map (or the start) since the last call and returns it.
+     * @return the shortest path from the start to the goal (inclusive), or null if there is none
+     * (including when the start or the goal is outside the map or an obstacle).
+     */
+    public Pixel2D[] getPath()
+    {
+        if (closed)
+        {
+            throw new IllegalStateException("PathPlanner was closed");
+        }
+        expanded = 0;
+        if (restart)
+        {
+            reset();
+        }
+        if (goal < 0 || start < 0) return null;
+        for (int k = 0; k < pendingSize; k++) // the changed pixels and their neighbors get new look-aheads
+        {
+            int p = pending[k];
+            updateVertex(p);
+            for (int d = 0; d < 8; d++)
+            {
+                int n = GridBfs.neighbor(p % w, p / w, GridBfs.DX[d], GridBfs.DY[d], w, h, cyclic);
+                if (n >= 0) updateVertex(n);
+            }
+        }
+        pendingSize = 0;
+        if (!free(start) || map.getPixel(goalX, goalY) == obsColor) return null;
+        computeShortestPath();
+        return g[start] >= INF ? null : path();
+    }
+
+    /**
+     * Moves the start (e.g. as the agent walks along the path): the search tree rooted at the goal is kept.
+     */
+    public void setStart(Pixel2D p)
+    {
+        if (p == null)
+        {
+            throw new IllegalArgumentException("start can't be null");
+        }
+        startX = p.getX();
+        startY = p.getY();
+        if (!restart)
+        {
+            start = inside(startX, startY) ? startY * w + startX : -1;
+            if (start >= 0)
+            {
+                km += heuristic(last); // the keys in the queue are now too small by at most this much
+                last = start;
+            }
+        }
+    }
+
+    /**
+     * @return the current start pixel.
+     */
+    public Pixel2D getStart()
+    {
+        return new Index2D(startX, startY);
+    }
+
+    /**
+     * @return the goal pixel.
+     */
+    public Pixel2D getGoal()
+    {
+        return new Index2D(goalX, goalY);
+    }
+
+    /**
+     * @return the number of pixels expanded by the last getPath (the cost of the last repair).
+     */
+    public long getExpanded()
+    {
+        return expanded;
+    }
+
+    /**
+     * Detaches the planner from its map (getPath can not be called anymore).
+     */
+    @Override
+    public void close()
+    {
+        if (!closed)
+        {
+            closed = true;
+            map.removeMapListener(this);
+        }
+    }
+
+    @Override
+    public void pixelChanged(Map map, int x, int y, int oldValue, int newValue)
+    {
+        if (restart || (oldValue == obsColor) == (newValue == obsColor)) return; // not an obstacle change
+        if (pendingSize == pending.length)
+        {
+            pending = java.util.Arrays.copyOf(pending, pendingSize * 2);
+        }
+        pending[pendingSize++] = y * w + x;
+    }
+
+    @Override
+    public void mapChanged(Map map)
+    {
+        restart = true;
+        pendingSize = 0;
+    }
+
+    ////////////////////// D* Lite /////////////////////////
+    /**
+     * Starts a new search over the current map: only the goal is known (g = 0).
+     */
+    private void reset()
+    {
+        restart = false;
+        pendingSize = 0;
+        w = map.getWidth();
+        h = map.getHeight();
+        if (g.length != w * h)
+        {
+            g = new int[w * h];
+            rhs = new int[w * h];
+            queued = new long[w * h];
+        }
+        java.util.Arrays.fill(g, INF);
+        java.util.Arrays.fill(rhs, INF);
+        java.util.Arrays.fill(queued, -1);
+        open.clear();
+        km = 0;
+        goal = inside(goalX, goalY) ? goalY * w + goalX : -1;
+        start = inside(startX, startY) ? startY * w + startX : -1;
+        last = start;
+        if (goal >= 0)
+        {
+            rhs[goal] = 0;
+            updateVertex(goal);
+        }
+    }
+
+    /**
+     * Expands the inconsistent pixels in key order until the start is consistent and no queued pixel
+     * may lower its distance.
+     */
+    private void computeShortestPath()
+    {
+        while (true) {
+            while (!open.isEmpty() && (queued[open.peek()] != open.peekKey() || g[open.peek()] == rhs[open.peek()]))
+            {
+                open.pop(); // a stale entry
+            }
+            if (open.isEmpty() || (open.peekKey() >= key(start) && rhs[start] == g[start])) return;
+            long kOld = open.peekKey();
+            int u = open.pop();
+            queued[u] = -1;
+            expanded++;
+            long kNew = key(u);
+            if (kOld < kNew) // the start moved since u was queued
+            {
+                push(u, kNew);
+            }
+            else if (g[u] > rhs[u]) // over-consistent: its distance went down, pass it on to the neighbors
+            {
+                g[u] = rhs[u];
+                for (int d = 0; d < 8; d++)
+                {
+                    int n = GridBfs.neighbor(u % w, u / w, GridBfs.DX[d], GridBfs.DY[d], w, h, cyclic);
+                    if (n >= 0 && n != goal && free(n) && rhs[n] > g[u] + 1)
+                    {
+                        rhs[n] = g[u] + 1;
+                        queue(n);
+                    }
+                }
+            }
+            else // under-consistent: its distance went up, the neighbors which relied on it need new look-aheads
+            {
+                int gOld = g[u];
+                g[u] = INF;
+                updateVertex(u);
+                for (int d = 0; d < 8; d++)
+                {
+                    int n = GridBfs.neighbor(u % w, u / w, GridBfs.DX[d], GridBfs.DY[d], w, h, cyclic);
+                    if (n >= 0 && rhs[n] == gOld + 1) updateVertex(n);
+                }
+            }
+        }
+    }
+
+    /**
+     * Recomputes the look-ahead of pixel i and (re)queues it iff it is inconsistent.
+     */
+    private void updateVertex(int i)
+    {
+        if (i != goal)
+        {
+            int best = INF;
+            if (free(i))
+            {
+                for (int d = 0; d < 8; d++)
+                {
+                    int n = GridBfs.neighbor(i % w, i / w, GridBfs.DX[d], GridBfs.DY[d], w, h, cyclic);
+                    if (n >= 0 && free(n) && g[n] + 1 < best) best = g[n] + 1;
+                }
+            }
+            rhs[i] = best;
+        }
+        queue(i);
+    }
+
+    /**
+     * (Re)queues pixel i iff it is inconsistent.
+     */
+    private void queue(int i)
+    {
+        if (g[i] != rhs[i])
+        {
+            long k = key(i);
+            if (queued[i] != k) push(i, k);
+        }
+        else
+        {
+            queued[i] = -1; // its queue entry (if any) is stale now
+        }
+    }
+
+    private void push(int i, long k)
+    {
+        queued[i] = k;
+        open.push(k, i);
+    }
+
+    /**
+     * @return the D* Lite key of pixel i: (min(g,rhs) + heuristic + km, min(g,rhs)) packed in a long.
+     */
+    private long key(int i)
+    {
+        int m = Math.min(g[i], rhs[i]);
+        return ((long) (m + heuristic(i) + km) << 32) | m;
+    }
+
+    /**
+     * @return the octile distance between pixel i and the start (a lower bound of the steps between them).
+     */
+    private int heuristic(int i)
+    {
+        return GridBfs.octile(i % w, i / w, startX, startY, w, h, cyclic);
+    }
+
+    /**
+     * @return true iff pixel i may be stepped on (the goal always may: a goal obstacle is checked by getPath).
+     */
+    private boolean free(int i)
+    {
+        return i == goal || map.getPixel(i % w, i / w) != obsColor;
+    }
+
+    private boolean inside(int x, int y)
+    {
+        return x >= 0 && x < w && y >= 0 && y < h;
+    }
+
+    /**
+     * Follows the steepest descent of g from the start to the goal.
+     */
+    private Pixel2D[] path()
+    {
+        Pixel2D[] ans = new Pixel2D[g[start] + 1];
+        int cur = start;
+        for (int k = 0; ; k++)
+        {
+            ans[k] = new Index2D(cur % w, cur / w);
+            if (cur == goal) return ans;
+            int next = -1;
+            for (int d = 0; d < 8; d++)
+            {
+                int n = GridBfs.neighbor(cur % w, cur / w, GridBfs.DX[d], GridBfs.DY[d], w, h, cyclic);
+                if (n >= 0 && free(n) && (next < 0 || g[n] < g[next])) next = n;
+            }
+            cur = next;
+        }
+    }
+}
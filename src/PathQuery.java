@@ -0,0 +1,54 @@
+/**
+ * One shortest path query of a batch (see Map.shortestPaths): the path from p1 to p2 avoiding obsColor,
+ * as Map.shortestPath(p1, p2, obsColor, cyclic) would compute it.
+ */
+public final class PathQuery {
+
+    private final Pixel2D p1, p2;
+    private final int obsColor;
+    private final boolean cyclic;
+
+    /**
+     * @param p1 the start pixel.
+     * @param p2 the end pixel.
+     * @param obsColor the color of the obstacles.
+     * @param cyclic whether the map wraps around its edges.
+     */
+    public PathQuery(Pixel2D p1, Pixel2D p2, int obsColor, boolean cyclic)
+    {
+        if (p1 == null || p2 == null)
+        {
+            throw new IllegalArgumentException("p1 and p2 can't be null");
+        }
+        this.p1 = p1;
+        this.p2 = p2;
+        this.obsColor = obsColor;
+        this.cyclic = cyclic;
+    }
+
+    public Pixel2D getP1()
+    {
+        return p1;
+    }
+
+    public Pixel2D getP2()
+    {
+        return p2;
+    }
+
+    public int getObsColor()
+    {
+        return obsColor;
+    }
+
+    public boolean isCyclic()
+    {
+        return cyclic;
+    }
+
+    @Override
+    public String toString()
+    {
+        return p1 + "->" + p2 + (cyclic ? " cyclic" : "") + " obs=" + obsColor;
+    }
+}
@@ -0,0 +1,190 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The reachability of a Map for one obsColor and cyclic: whether shortestPath(p1, p2, obsColor, cyclic)
+ * finds a path, answered in O(1) from the 8-connected components of the free pixels (see ComponentLabeler),
+ * without searching.
+ * The index listens to the map (see MapListener) and keeps the components up to date:
+ * 1. A removed obstacle: the pixel gets a new label, which is joined with the labels of its free neighbors
+ *    (union-find over the labels, so a query follows the label to its root).
+ * 2. A new obstacle may split a component, so the labels are recomputed on the next query, as after a bulk
+ *    change (init, fill, mul, addMap2D, rescale).
+ * close() detaches the index from its map.
+ */
+public final class ReachabilityIndex implements MapListener, AutoCloseable {
+
+    private static final int BLOCKED = -1; // the label of an obstacle
+
+    private final Map map;
+    private final int obsColor;
+    private final boolean cyclic;
+
+    private int w, h;
+    private int[] label = new int[0]; // the label of each pixel, or BLOCKED
+    private int[] root = new int[0]; // the union-find forest over the labels
+    private int labels; // the labels in use
+    private boolean restart = true; // the labels have to be recomputed from scratch
+    private boolean closed;
+
+    /**
+     * Creates the reachability index of a map and registers it as a listener of the map.
+     * The components are labeled on the first query.
+     * @param map the map.
+     * @param obsColor the color of the obstacles.
+     * @param cyclic whether the map wraps around its edges.
+     */
+    public ReachabilityIndex(Map map, int obsColor, boolean cyclic)
+    {
+        if (map == null)
+        {
+            throw new IllegalArgumentException("map can't be null");
+        }
+        this.map = map;
+        this.obsColor = obsColor;
+        this.cyclic = cyclic;
+        map.addMapListener(this);
+    }
+
+    /**
+     * @return true iff there is a path from p1 to p2 avoiding obsColor, i.e. iff shortestPath(p1, p2, obsColor, cyclic)
+     * is not null (false for a pixel outside the map or on an obstacle).
+     */
+    public boolean isReachable(Pixel2D p1, Pixel2D p2)
+    {
+        update();
+        if (p1 == null || p2 == null) return false;
+        int a = index(p1), b = index(p2);
+        if (a < 0 || b < 0 || label[a] == BLOCKED || label[b] == BLOCKED) return false;
+        return find(label[a]) == find(label[b]);
+    }
+
+    /**
+     * @return the obstacle color of this index.
+     */
+    public int getObsColor()
+    {
+        return obsColor;
+    }
+
+    /**
+     * @return whether this index wraps around the edges of the map.
+     */
+    public boolean isCyclic()
+    {
+        return cyclic;
+    }
+
+    /**
+     * Detaches the index from its map (it can not be queried anymore).
+     */
+    @Override
+    public void close()
+    {
+        if (!closed)
+        {
+            closed = true;
+            map.removeMapListener(this);
+        }
+    }
+
+    @Override
+    public void pixelChanged(Map map, int x, int y, int oldValue, int newValue)
+    {
+        if (restart || (oldValue == obsColor) == (newValue == obsColor)) return; // not an obstacle change
+        if (newValue == obsColor || labels == root.length) // a possible split (or too many labels: start afresh)
+        {
+            restart = true;
+            return;
+        }
+        final int p = y * w + x, l = labels++;
+        label[p] = l;
+        root[l] = l;
+        for (int d = 0; d < 8; d++)
+        {
+            int n = GridBfs.neighbor(x, y, GridBfs.DX[d], GridBfs.DY[d], w, h, cyclic);
+            if (n >= 0 && label[n] != BLOCKED) union(l, label[n]);
+        }
+    }
+
+    @Override
+    public void mapChanged(Map map)
+    {
+        restart = true;
+    }
+
+    /**
+     * @return whether the next query recomputes the labels (Map skips its shortcut then).
+     */
+    boolean needsRebuild()
+    {
+        return restart;
+    }
+
+    private int index(Pixel2D p)
+    {
+        int x = p.getX(), y = p.getY();
+        return x < 0 || x >= w || y < 0 || y >= h ? -1 : y * w + x;
+    }
+
+    ////////////////////// Labels /////////////////////////
+    private void update()
+    {
+        if (closed)
+        {
+            throw new IllegalStateException("ReachabilityIndex was closed");
+        }
+        if (restart) rebuild();
+    }
+
+    /**
+     * Labels the components of the free pixels (the obstacles are components of their own, dropped afterwards).
+     */
+    private void rebuild()
+    {
+        restart = false;
+        w = map.getWidth();
+        h = map.getHeight();
+        final int n = w * h;
+        if (label.length != n)
+        {
+            label = new int[n];
+        }
+        final int[] free = new int[n]; // 1 on the free pixels, 0 on the obstacles
+        for (int y = 0; y < h; y++)
+        {
+            for (int x = 0; x < w; x++)
+            {
+                free[y * w + x] = map.getPixel(x, y) == obsColor ? 0 : 1;
+            }
+        }
+        labels = ComponentLabeler.label(free, w, h, cyclic, 8, ForkJoinPool.commonPool(), label);
+        for (int i = 0; i < n; i++)
+        {
+            if (free[i] == 0) label[i] = BLOCKED;
+        }
+        // room for a label per removed obstacle until as many new labels as pixels force a rebuild
+        if (root.length < labels + n)
+        {
+            root = new int[labels + n];
+        }
+        for (int l = 0; l < labels; l++)
+        {
+            root[l] = l;
+        }
+    }
+
+    private void union(int a, int b)
+    {
+        int ra = find(a), rb = find(b);
+        if (ra != rb) root[Math.max(ra, rb)] = Math.min(ra, rb);
+    }
+
+    private int find(int l)
+    {
+        while (root[l] != l) {
+            root[l] = root[root[l]];
+            l = root[l];
+        }
+        return l;
+    }
+}
@@ -0,0 +1,469 @@
+import java.util.Arrays;
+
+/**
+ * A Map2D which stores every row as runs (spans) of equal values - run-length encoding.
+ * Maze and floor-plan maps are long horizontal runs of identical values, so both the memory and
+ * the work of the run based algorithms (fill, allDistance, equals) drop by about the run length.
+ * The runs of a row are kept normalized: they cover [0,w), sorted by start, and two consecutive
+ * runs never have the same value (so equal maps have equal runs).
+ */
+public class RleMap2D extends AbstractMap2D {
+
+    private int[][] starts; // starts[y][k]: the first x of the k-th run of row y
+    private int[][] values; // values[y][k]: the value of the k-th run of row y
+    private int[] counts; // counts[y]: the number of runs in row y
+
+    /**
+     * Constructs a w*h map with an init value v (a single run per row).
+     */
+    public RleMap2D(int w, int h, int v)
+    {
+        init(w, h, v);
+    }
+
+    /**
+     * Constructs a map from a given 2D (row-major) array.
+     */
+    public RleMap2D(int[][] data)
+    {
+        init(data);
+    }
+
+    @Override
+    public void init(int[][] arr) {
+        int rowLength = checkArray(arr);
+        allocate(rowLength, arr.length, 0);
+        for (int y = 0; y < h; y++) {
+            encodeRow(y, arr[y]);
+        }
+    }
+
+    @Override
+    public int[][] getMap() {
+        int[][] ans = new int[h][w];
+        for (int y = 0; y < h; y++) {
+            decodeRow(y, ans[y]);
+        }
+        return ans;
+    }
+
+    /**
+     * @param y a row of this map.
+     * @return the number of runs in row y.
+     */
+    public int getRunCount(int y)
+    {
+        checkBounds(0, y);
+        return counts[y];
+    }
+
+    /**
+     * @return the first x of the k-th run of row y.
+     */
+    public int getRunStart(int y, int k)
+    {
+        return starts[y][k];
+    }
+
+    /**
+     * @return the length of the k-th run of row y.
+     */
+    public int getRunLength(int y, int k)
+    {
+        return end(y, k) - starts[y][k];
+    }
+
+    /**
+     * @return the value of the k-th run of row y.
+     */
+    public int getRunValue(int y, int k)
+    {
+        return values[y][k];
+    }
+
+    ////////////////////// Storage /////////////////////////
+    @Override
+    protected void allocate(int w, int h, int v)
+    {
+        this.w = w;
+        this.h = h;
+        this.starts = new int[h][];
+        this.values = new int[h][];
+        this.counts = new int[h];
+        for (int y = 0; y < h; y++)
+        {
+            starts[y] = new int[]{0};
+            values[y] = new int[]{v};
+            counts[y] = 1;
+        }
+    }
+
+    @Override
+    protected int get(int x, int y)
+    {
+        return values[y][find(y, x)];
+    }
+
+    @Override
+    protected void put(int x, int y, int v)
+    {
+        if (values[y][find(y, x)] != v)
+        {
+            setRange(y, x, x, v);
+        }
+    }
+
+    ////////////////////// Set operations /////////////////////////
+    @Override
+    public void addMap2D(Map2D p) {
+        if(!sameDimensions(p))
+        {
+            throw new IllegalArgumentException("Maps must have the same dimensions to add");
+        }
+        int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            decodeRow(y, row);
+            for (int x = 0; x < w; x++) {
+                row[x] += p.getPixel(x, y);
+            }
+            encodeRow(y, row);
+        }
+    }
+
+    @Override
+    public void mul(double scalar) {
+        for (int y = 0; y < h; y++) {
+            for (int k = 0; k < counts[y]; k++) {
+                values[y][k] = (int) (values[y][k] * scalar); // a whole run in one step
+            }
+            normalize(y);
+        }
+    }
+
+    @Override
+    public void rescale(double sx, double sy) {
+        if (sx <= 0 || sy <= 0) throw new IllegalArgumentException("scale factors must be > 0");
+        int newW = Math.max(1, (int) Math.round(w * sx));
+        int newH = Math.max(1, (int) Math.round(h * sy));
+        int[][] out = new int[newH][newW];
+        int[] row = new int[w];
+        for (int ny = 0; ny < newH; ny++) {
+            decodeRow(Math.min(h - 1, (int) Math.round(ny / sy)), row);
+            for (int nx = 0; nx < newW; nx++) {
+                out[ny][nx] = row[Math.min(w - 1, (int) Math.round(nx / sx))];
+            }
+        }
+        init(out);
+    }
+
+    /**
+     * Two RLE maps are compared run by run (the runs are normalized), other maps pixel by pixel.
+     */
+    @Override
+    public boolean equals(Object ob)
+    {
+        if (!(ob instanceof RleMap2D))
+        {
+            return super.equals(ob);
+        }
+        RleMap2D map = (RleMap2D) ob;
+        if (map.w != w || map.h != h) return false;
+        for (int y = 0; y < h; y++)
+        {
+            int n = counts[y];
+            if (map.counts[y] != n
+                    || !Arrays.equals(starts[y], 0, n, map.starts[y], 0, n)
+                    || !Arrays.equals(values[y], 0, n, map.values[y], 0, n))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int ans = 1; // the same value as AbstractMap2D.hashCode, without the per pixel lookups
+        for (int y = 0; y < h; y++)
+        {
+            for (int k = 0; k < counts[y]; k++)
+            {
+                for (int x = starts[y][k], e = end(y, k); x < e; x++)
+                {
+                    ans = 31 * ans + values[y][k];
+                }
+            }
+        }
+        return 31 * (31 * w + h) + ans;
+    }
+
+    ////////////////////// Algorithms /////////////////////////
+    /**
+     * Run based fill (4-connectivity): the connected component is collected as a set of runs
+     * (two runs of the old color in adjacent rows are connected iff their x ranges overlap),
+     * then each of them is recolored as a whole.
+     */
+    @Override
+    public int fill(Pixel2D xy, int new_v, boolean cyclic) {
+        final int fx = xy.getX(), fy = xy.getY();
+        if (!inBounds(fx, fy)) return 0;
+        final int k0 = find(fy, fx);
+        final int old = values[fy][k0];
+        if (old == new_v) return 0;
+
+        boolean[][] seen = new boolean[h][];
+        int[] queue = new int[32]; // pairs of (y, run index)
+        int head = 0, tail = 0;
+        seen[fy] = new boolean[counts[fy]];
+        seen[fy][k0] = true;
+        queue[tail++] = fy;
+        queue[tail++] = k0;
+        long ans = 0;
+        while (head < tail) {
+            int y = queue[head++], k = queue[head++];
+            int a = starts[y][k], b = end(y, k) - 1;
+            ans += b - a + 1;
+            // the runs of the old color which touch this one: above, below and (cyclic) around the row ends
+            for (int dy = -1; dy <= 1; dy++) {
+                int ny = y + dy;
+                if (cyclic) {
+                    ny = (ny + h) % h;
+                } else if (ny < 0 || ny >= h) {
+                    continue;
+                }
+                int from, to; // the run range of row ny to check
+                if (dy != 0) {
+                    from = find(ny, a);
+                    to = find(ny, b);
+                } else if (cyclic && (a == 0 || b == w - 1)) {
+                    from = a == 0 ? counts[y] - 1 : 0;
+                    to = from;
+                    if (a == 0 && b == w - 1) continue; // the whole row is one run
+                } else {
+                    continue;
+                }
+                if (seen[ny] == null) seen[ny] = new boolean[counts[ny]];
+                for (int j = from; j <= to; j++) {
+                    if (!seen[ny][j] && values[ny][j] == old) {
+                        seen[ny][j] = true;
+                        if (tail + 2 > queue.length) queue = Arrays.copyOf(queue, queue.length * 2);
+                        queue[tail++] = ny;
+                        queue[tail++] = j;
+                    }
+                }
+            }
+        }
+        // recolor the collected runs, then merge equal neighbor runs
+        for (int y = 0; y < h; y++) {
+            if (seen[y] == null) continue;
+            boolean changed = false;
+            for (int k = 0; k < seen[y].length; k++) {
+                if (seen[y][k]) {
+                    values[y][k] = new_v;
+                    changed = true;
+                }
+            }
+            if (changed) normalize(y);
+        }
+        return (int) ans;
+    }
+
+    /**
+     * Span based BFS distance map (4-connectivity), exact like Map.allDistance.
+     * Each BFS layer is a list of spans (row, [a,b]) instead of single pixels: a span grows by one
+     * pixel at each end (within its row), and is projected to the rows above and below, clipped to
+     * their free runs and to the not yet visited pixels.
+     */
+    @Override
+    public Map2D allDistance(Pixel2D start, int obsColor, boolean cyclic) {
+        final int sx = start.getX(), sy = start.getY();
+        final int INF = Integer.MAX_VALUE;
+        final int[] dist = new int[w * h];
+        Arrays.fill(dist, INF);
+        if (inBounds(sx, sy) && get(sx, sy) != obsColor) {
+            int[] cur = new int[24], next = new int[24]; // triples (y, a, b)
+            int curSize = 0;
+            dist[sy * w + sx] = 0;
+            cur[curSize++] = sy;
+            cur[curSize++] = sx;
+            cur[curSize++] = sx;
+            for (int d = 0; curSize > 0; d++) {
+                int nextSize = 0;
+                for (int s = 0; s < curSize; s += 3) {
+                    int y = cur[s], a = cur[s + 1], b = cur[s + 2];
+                    // grow the span by one pixel on each side (in its row)
+                    for (int side = 0; side < 2; side++) {
+                        int x = side == 0 ? a - 1 : b + 1;
+                        if (cyclic) {
+                            x = (x + w) % w;
+                        } else if (x < 0 || x >= w) {
+                            continue;
+                        }
+                        int i = y * w + x;
+                        if (dist[i] == INF && get(x, y) != obsColor) {
+                            dist[i] = d + 1;
+                            next = push(next, nextSize, y, x, x);
+                            nextSize += 3;
+                        }
+                    }
+                    // project the span to the rows above and below
+                    for (int dy = -1; dy <= 1; dy += 2) {
+                        int ny = y + dy;
+                        if (cyclic) {
+                            ny = (ny + h) % h;
+                        } else if (ny < 0 || ny >= h) {
+                            continue;
+                        }
+                        int row = ny * w;
+                        for (int k = find(ny, a); k < counts[ny] && starts[ny][k] <= b; k++) {
+                            if (values[ny][k] == obsColor) continue;
+                            int p = Math.max(a, starts[ny][k]), q = Math.min(b, end(ny, k) - 1);
+                            for (int x = p; x <= q; x++) {
+                                if (dist[row + x] != INF) continue;
+                                int x0 = x;
+                                while (x <= q && dist[row + x] == INF) {
+                                    dist[row + x] = d + 1;
+                                    x++;
+                                }
+                                next = push(next, nextSize, ny, x0, x - 1);
+                                nextSize += 3;
+                            }
+                        }
+                    }
+                }
+                int[] tmp = cur;
+                cur = next;
+                next = tmp;
+                curSize = nextSize;
+            }
+        }
+        // the same marks as Map.allDistance: obstacles get obsColor, unreachable pixels -1
+        for (int y = 0; y < h; y++) {
+            for (int k = 0; k < counts[y]; k++) {
+                int from = y * w + starts[y][k], to = y * w + end(y, k);
+                if (values[y][k] == obsColor) {
+                    Arrays.fill(dist, from, to, obsColor);
+                } else {
+                    for (int i = from; i < to; i++) {
+                        if (dist[i] == INF) dist[i] = -1;
+                    }
+                }
+            }
+        }
+        return new Map(w, h, dist);
+    }
+
+    ////////////////////// Private Methods /////////////////////////
+    /**
+     * @return the index of the run of row y which contains x (binary search).
+     */
+    private int find(int y, int x)
+    {
+        int k = Arrays.binarySearch(starts[y], 0, counts[y], x);
+        return k >= 0 ? k : -k - 2;
+    }
+
+    /**
+     * @return the end (exclusive) of the k-th run of row y.
+     */
+    private int end(int y, int k)
+    {
+        return k + 1 < counts[y] ? starts[y][k + 1] : w;
+    }
+
+    private static int[] push(int[] spans, int size, int y, int a, int b)
+    {
+        if (size + 3 > spans.length) spans = Arrays.copyOf(spans, spans.length * 2);
+        spans[size] = y;
+        spans[size + 1] = a;
+        spans[size + 2] = b;
+        return spans;
+    }
+
+    private void decodeRow(int y, int[] row)
+    {
+        for (int k = 0; k < counts[y]; k++)
+        {
+            Arrays.fill(row, starts[y][k], end(y, k), values[y][k]);
+        }
+    }
+
+    private void encodeRow(int y, int[] row)
+    {
+        int n = 1;
+        for (int x = 1; x < w; x++)
+        {
+            if (row[x] != row[x - 1]) n++;
+        }
+        int[] s = new int[n], v = new int[n];
+        s[0] = 0;
+        v[0] = row[0];
+        for (int x = 1, k = 0; x < w; x++)
+        {
+            if (row[x] != row[x - 1])
+            {
+                k++;
+                s[k] = x;
+                v[k] = row[x];
+            }
+        }
+        starts[y] = s;
+        values[y] = v;
+        counts[y] = n;
+    }
+
+    /**
+     * Merges consecutive runs of row y which have the same value.
+     */
+    private void normalize(int y)
+    {
+        int[] s = starts[y], v = values[y];
+        int n = 1;
+        for (int k = 1; k < counts[y]; k++)
+        {
+            if (v[k] != v[n - 1])
+            {
+                s[n] = s[k];
+                v[n] = v[k];
+                n++;
+            }
+        }
+        counts[y] = n;
+    }
+
+    /**
+     * Sets the pixels [x0,x1] of row y to v, keeping the runs of the row normalized.
+     */
+    private void setRange(int y, int x0, int x1, int v)
+    {
+        int n = counts[y];
+        int k0 = find(y, x0), k1 = find(y, x1);
+        // the new runs replacing k0..k1: [left remainder] [x0..x1 = v] [right remainder]
+        int[] ns = new int[3], nv = new int[3];
+        int m = 0;
+        if (starts[y][k0] < x0)
+        {
+            ns[m] = starts[y][k0];
+            nv[m++] = values[y][k0];
+        }
+        ns[m] = x0;
+        nv[m++] = v;
+        if (x1 + 1 < end(y, k1))
+        {
+            ns[m] = x1 + 1;
+            nv[m++] = values[y][k1];
+        }
+        int[] s = new int[n - (k1 - k0 + 1) + m], vals = new int[s.length];
+        System.arraycopy(starts[y], 0, s, 0, k0);
+        System.arraycopy(values[y], 0, vals, 0, k0);
+        System.arraycopy(ns, 0, s, k0, m);
+        System.arraycopy(nv, 0, vals, k0, m);
+        System.arraycopy(starts[y], k1 + 1, s, k0 + m, n - k1 - 1);
+        System.arraycopy(values[y], k1 + 1, vals, k0 + m, n - k1 - 1);
+        starts[y] = s;
+        values[y] = vals;
+        counts[y] = s.length;
+        normalize(y);
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * A Map2D which stores each pixel in a short (values in [-32768,32767]),
+ * half the memory of Map - for maps with values beyond the byte range (e.g. up to a few hundred).
+ * If a value outside the short range is written (setPixel, addMap2D, mul, draw...), the storage is widened
+ * to int[] and the map keeps working with the same values (see NarrowMap2D).
+ */
+public class ShortMap2D extends NarrowMap2D {
+
+    /**
+     * Constructs a w*h map with an init value v.
+     */
+    public ShortMap2D(int w, int h, int v)
+    {
+        super(2);
+        init(w, h, v);
+    }
+
+    /**
+     * Constructs a map from a given 2D (row-major) array.
+     */
+    public ShortMap2D(int[][] data)
+    {
+        super(2);
+        init(data);
+    }
+
+    /**
+     * @param v a pixel value.
+     * @return true iff v can be stored in a short.
+     */
+    public static boolean fits(int v)
+    {
+        return v >= Short.MIN_VALUE && v <= Short.MAX_VALUE;
+    }
+}
@@ -0,0 +1,474 @@
+import java.util.Arrays;
+
+/**
+ * A sparse Map2D made of TILE*TILE tiles, for huge maps which are mostly one background
+ * value with a few shapes drawn on them.
+ * A uniform tile is stored as a single value, and is only materialized (as a TILE*TILE int array)
+ * when a pixel is set to a different value. compact() turns materialized tiles which became
+ * uniform back into single values.
+ * fill and allDistance handle uniform tiles as a whole instead of pixel by pixel:
+ * 1. fill recolors a uniform tile of the old color in one step and continues from its border.
+ * 2. allDistance only visits the border ring of a uniform (non obstacle) tile - the distances
+ *    inside it follow from the border ones (city-block distance in an obstacle free rectangle).
+ */
+public class TiledMap2D extends AbstractMap2D {
+
+    public static final int TILE = 64; // tile side (a power of 2)
+    private static final int SHIFT = Integer.numberOfTrailingZeros(TILE), MASK = TILE - 1;
+
+    private int tilesX, tilesY; // number of tiles in each row / column
+    private int[][] tiles; // materialized tiles (TILE*TILE, row-major), null if uniform
+    private int[] uniform; // the value of each uniform tile
+
+    /**
+     * Constructs a w*h map with an init value v (a single uniform value per tile).
+     */
+    public TiledMap2D(int w, int h, int v)
+    {
+        init(w, h, v);
+    }
+
+    /**
+     * Constructs a map from a given 2D (row-major) array - uniform tiles are stored compactly.
+     */
+    public TiledMap2D(int[][] data)
+    {
+        init(data);
+    }
+
+    @Override
+    public void init(int[][] arr) {
+        int rowLength = checkArray(arr);
+        allocate(rowLength, arr.length, 0);
+        for (int t = 0; t < tiles.length; t++) // only the tiles which are not uniform in arr are materialized
+        {
+            int x0 = (t % tilesX) << SHIFT, y0 = (t / tilesX) << SHIFT;
+            int tw = Math.min(w - x0, TILE), th = Math.min(h - y0, TILE);
+            int v = arr[y0][x0];
+            boolean same = true;
+            for (int y = y0; y < y0 + th && same; y++)
+            {
+                for (int x = x0; x < x0 + tw && same; x++)
+                {
+                    same = arr[y][x] == v;
+                }
+            }
+            if (same)
+            {
+                uniform[t] = v;
+                continue;
+            }
+            int[] tile = new int[TILE * TILE];
+            for (int y = 0; y < th; y++)
+            {
+                System.arraycopy(arr[y0 + y], x0, tile, y << SHIFT, tw); // deep copy
+            }
+            tiles[t] = tile;
+        }
+    }
+
+    /**
+     * @return the number of materialized (non uniform) tiles.
+     */
+    public int getMaterializedTiles()
+    {
+        int ans = 0;
+        for (int[] t : tiles)
+        {
+            if (t != null) ans++;
+        }
+        return ans;
+    }
+
+    /**
+     * Turns every materialized tile which is uniform (within the map) back into a single value.
+     */
+    public void compact()
+    {
+        for (int t = 0; t < tiles.length; t++)
+        {
+            compact(t);
+        }
+    }
+
+    ////////////////////// Storage /////////////////////////
+    @Override
+    protected void allocate(int w, int h, int v)
+    {
+        this.w = w;
+        this.h = h;
+        this.tilesX = (w + MASK) >> SHIFT;
+        this.tilesY = (h + MASK) >> SHIFT;
+        this.tiles = new int[tilesX * tilesY][];
+        this.uniform = new int[tilesX * tilesY];
+        Arrays.fill(uniform, v);
+    }
+
+    @Override
+    protected int get(int x, int y)
+    {
+        int t = (y >> SHIFT) * tilesX + (x >> SHIFT);
+        int[] tile = tiles[t];
+        return tile == null ? uniform[t] : tile[((y & MASK) << SHIFT) | (x & MASK)];
+    }
+
+    @Override
+    protected void put(int x, int y, int v)
+    {
+        int t = (y >> SHIFT) * tilesX + (x >> SHIFT);
+        int[] tile = tiles[t];
+        if (tile == null)
+        {
+            if (uniform[t] == v) return; // nothing changes - keep the tile compact
+            tile = new int[TILE * TILE];
+            Arrays.fill(tile, uniform[t]);
+            tiles[t] = tile;
+        }
+        tile[((y & MASK) << SHIFT) | (x & MASK)] = v;
+    }
+
+    ////////////////////// Set operations /////////////////////////
+    @Override
+    public void addMap2D(Map2D p) {
+        super.addMap2D(p);
+        compact();
+    }
+
+    @Override
+    public void mul(double scalar) {
+        for (int t = 0; t < tiles.length; t++)
+        {
+            if (tiles[t] == null)
+            {
+                uniform[t] = (int) (uniform[t] * scalar); // a whole tile in one step
+            }
+            else
+            {
+                int[] tile = tiles[t];
+                for (int i = 0; i < tile.length; i++)
+                {
+                    tile[i] = (int) (tile[i] * scalar);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void rescale(double sx, double sy) {
+        super.rescale(sx, sy);
+        compact();
+    }
+
+    ////////////////////// Algorithms /////////////////////////
+    /**
+     * Fill (4-connectivity): pixels of materialized tiles are recolored one by one,
+     * a uniform tile of the old color is recolored at once and its border is expanded.
+     * Recolored pixels (and tiles) are their own visited mark.
+     */
+    @Override
+    public int fill(Pixel2D xy, int new_v, boolean cyclic) {
+        final int fx = xy.getX(), fy = xy.getY();
+        if (!inBounds(fx, fy)) return 0;
+        final int old = get(fx, fy);
+        if (old == new_v) return 0;
+
+        // stack entries: y*w+x for a pixel, -(t+1) for a (recolored) uniform tile t
+        int[] stack = new int[64];
+        boolean[] touched = new boolean[tiles.length]; // materialized tiles to compact at the end
+        int size = 0;
+        long ans = 0;
+        int first = recolor(fx, fy, old, new_v, touched);
+        ans += first < 0 ? tileArea(-first - 1) : 1;
+        stack[size++] = first;
+        while (size > 0) {
+            int cur = stack[--size];
+            if (cur >= 0) {
+                int x = cur % w, y = cur / w;
+                for (int[] d : DIRS4) {
+                    int nx = x + d[0], ny = y + d[1];
+                    if (cyclic) {
+                        nx = (nx + w) % w;
+                        ny = (ny + h) % h;
+                    } else if (nx < 0 || nx >= w || ny < 0 || ny >= h) {
+                        continue;
+                    }
+                    int next = recolor(nx, ny, old, new_v, touched);
+                    if (next == NONE) continue;
+                    ans += next < 0 ? tileArea(-next - 1) : 1;
+                    if (size == stack.length) stack = Arrays.copyOf(stack, size * 2);
+                    stack[size++] = next;
+                }
+            }
+            else {
+                // a uniform tile: expand the neighbors (outside of it) of its border pixels
+                int t = -cur - 1;
+                int x0 = (t % tilesX) << SHIFT, y0 = (t / tilesX) << SHIFT;
+                int x1 = Math.min(w, x0 + TILE) - 1, y1 = Math.min(h, y0 + TILE) - 1;
+                for (int b = 0, n = borderLength(x0, y0, x1, y1); b < n; b++) {
+                    int bp = borderPixel(x0, y0, x1, y1, b);
+                    int bx = bp % w, by = bp / w;
+                    for (int[] d : DIRS4) {
+                        int nx = bx + d[0], ny = by + d[1];
+                        if (nx >= x0 && nx <= x1 && ny >= y0 && ny <= y1) continue; // inside the tile
+                        if (cyclic) {
+                            nx = (nx + w) % w;
+                            ny = (ny + h) % h;
+                        } else if (nx < 0 || nx >= w || ny < 0 || ny >= h) {
+                            continue;
+                        }
+                        int next = recolor(nx, ny, old, new_v, touched);
+                        if (next == NONE) continue;
+                        ans += next < 0 ? tileArea(-next - 1) : 1;
+                        if (size == stack.length) stack = Arrays.copyOf(stack, size * 2);
+                        stack[size++] = next;
+                    }
+                }
+            }
+        }
+        for (int t = 0; t < touched.length; t++)
+        {
+            if (touched[t]) compact(t);
+        }
+        return (int) ans;
+    }
+
+    /**
+     * Distance map (4-connectivity), exact like Map.allDistance.
+     * Pixels of materialized tiles are regular BFS nodes. For a uniform free tile only its border
+     * ring is searched: ring neighbors are 1 apart and each border pixel is also linked to the
+     * opposite border pixel of its row/column (tile width/height - 1 apart), which keeps every
+     * in-tile city-block distance. As these links are longer than 1, a bucket (Dial) queue is used.
+     * The interiors are then completed with a 2 pass city-block distance transform per tile.
+     */
+    @Override
+    public Map2D allDistance(Pixel2D start, int obsColor, boolean cyclic) {
+        final int sx = start.getX(), sy = start.getY();
+        final int INF = Integer.MAX_VALUE;
+        final int[] dist = new int[w * h];
+        Arrays.fill(dist, INF);
+        if (inBounds(sx, sy) && get(sx, sy) != obsColor) {
+            // Dial's algorithm: pending distances span less than 2*TILE (edges are shorter than TILE,
+            // start seeds less than 2*TILE), so 2*TILE buckets (by distance % 2*TILE) suffice
+            final int BUCKETS = 2 * TILE, BMASK = BUCKETS - 1;
+            IntList[] buckets = new IntList[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) buckets[i] = new IntList();
+            int pending = 0;
+            dist[sy * w + sx] = 0;
+            if (isInterior(sx, sy)) {
+                // the start is inside a uniform free tile: seed its border with the in-tile distances
+                int t = (sy >> SHIFT) * tilesX + (sx >> SHIFT);
+                int x0 = (t % tilesX) << SHIFT, y0 = (t / tilesX) << SHIFT;
+                int x1 = Math.min(w, x0 + TILE) - 1, y1 = Math.min(h, y0 + TILE) - 1;
+                for (int b = 0, n = borderLength(x0, y0, x1, y1); b < n; b++) {
+                    int bp = borderPixel(x0, y0, x1, y1, b);
+                    int bd = Math.abs(bp % w - sx) + Math.abs(bp / w - sy);
+                    dist[bp] = bd;
+                    buckets[bd & BMASK].add(bp);
+                    pending++;
+                }
+            }
+            else {
+                buckets[0].add(sy * w + sx);
+                pending++;
+            }
+            for (int d = 0; pending > 0; d++) {
+                IntList bucket = buckets[d & BMASK];
+                for (int k = 0; k < bucket.size; k++) {
+                    int cur = bucket.data[k];
+                    pending--;
+                    if (dist[cur] != d) continue; // stale entry, improved later on
+                    int x = cur % w, y = cur / w;
+                    int t = (y >> SHIFT) * tilesX + (x >> SHIFT);
+                    boolean freeTile = tiles[t] == null; // the uniform tile of cur is not an obstacle (cur is reachable)
+                    for (int[] dd : DIRS4) {
+                        int nx = x + dd[0], ny = y + dd[1];
+                        if (cyclic) {
+                            nx = (nx + w) % w;
+                            ny = (ny + h) % h;
+                        } else if (nx < 0 || nx >= w || ny < 0 || ny >= h) {
+                            continue;
+                        }
+                        if (isInterior(nx, ny) || get(nx, ny) == obsColor) continue;
+                        int ni = ny * w + nx;
+                        if (d + 1 < dist[ni]) {
+                            dist[ni] = d + 1;
+                            buckets[(d + 1) & BMASK].add(ni);
+                            pending++;
+                        }
+                    }
+                    if (freeTile) {
+                        // the links across the tile, to the opposite border pixel
+                        int x0 = (t % tilesX) << SHIFT, y0 = (t / tilesX) << SHIFT;
+                        int x1 = Math.min(w, x0 + TILE) - 1, y1 = Math.min(h, y0 + TILE) - 1;
+                        if (x1 - x0 >= 2 && (x == x0 || x == x1)) {
+                            int ni = y * w + (x == x0 ? x1 : x0);
+                            int nd = d + (x1 - x0);
+                            if (nd < dist[ni]) {
+                                dist[ni] = nd;
+                                buckets[nd & BMASK].add(ni);
+                                pending++;
+                            }
+                        }
+                        if (y1 - y0 >= 2 && (y == y0 || y == y1)) {
+                            int ni = (y == y0 ? y1 : y0) * w + x;
+                            int nd = d + (y1 - y0);
+                            if (nd < dist[ni]) {
+                                dist[ni] = nd;
+                                buckets[nd & BMASK].add(ni);
+                                pending++;
+                            }
+                        }
+                    }
+                }
+                bucket.size = 0;
+            }
+            // complete the interiors of the uniform free tiles from their borders
+            for (int t = 0; t < tiles.length; t++) {
+                if (tiles[t] == null && uniform[t] != obsColor) {
+                    int x0 = (t % tilesX) << SHIFT, y0 = (t / tilesX) << SHIFT;
+                    cityBlockTransform(dist, x0, y0, Math.min(w, x0 + TILE) - 1, Math.min(h, y0 + TILE) - 1);
+                }
+            }
+        }
+        // the same marks as Map.allDistance: obstacles get obsColor, unreachable pixels -1
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int i = y * w + x;
+                if (get(x, y) == obsColor) dist[i] = obsColor;
+                else if (dist[i] == INF) dist[i] = -1;
+            }
+        }
+        return new Map(w, h, dist);
+    }
+
+    ////////////////////// Private Methods /////////////////////////
+    private static final int NONE = Integer.MAX_VALUE; // "nothing recolored" (not a valid stack entry)
+
+    /**
+     * Recolors (x,y) from old to new_v: its whole tile if it is uniform, else the single pixel.
+     * @return NONE if (x,y) is not of the old color, -(t+1) if the uniform tile t was recolored,
+     * else the index y*w+x of the recolored pixel.
+     */
+    private int recolor(int x, int y, int old, int new_v, boolean[] touched)
+    {
+        int t = (y >> SHIFT) * tilesX + (x >> SHIFT);
+        int[] tile = tiles[t];
+        if (tile == null)
+        {
+            if (uniform[t] != old) return NONE;
+            uniform[t] = new_v;
+            return -(t + 1);
+        }
+        int i = ((y & MASK) << SHIFT) | (x & MASK);
+        if (tile[i] != old) return NONE;
+        tile[i] = new_v;
+        touched[t] = true;
+        return y * w + x;
+    }
+
+    /**
+     * @return true iff (x,y) is strictly inside (not on the border of) a uniform tile.
+     */
+    private boolean isInterior(int x, int y)
+    {
+        int t = (y >> SHIFT) * tilesX + (x >> SHIFT);
+        if (tiles[t] != null) return false;
+        int x0 = (t % tilesX) << SHIFT, y0 = (t / tilesX) << SHIFT;
+        int x1 = Math.min(w, x0 + TILE) - 1, y1 = Math.min(h, y0 + TILE) - 1;
+        return x > x0 && x < x1 && y > y0 && y < y1;
+    }
+
+    /**
+     * Two pass (forward, backward) city-block distance transform of the rectangle [x0,x1]*[y0,y1],
+     * seeded by the distances already in dist (INF stands for "not reached").
+     */
+    private void cityBlockTransform(int[] dist, int x0, int y0, int x1, int y1)
+    {
+        final int INF = Integer.MAX_VALUE;
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                int i = y * w + x, best = dist[i];
+                if (x > x0 && dist[i - 1] != INF) best = Math.min(best, dist[i - 1] + 1);
+                if (y > y0 && dist[i - w] != INF) best = Math.min(best, dist[i - w] + 1);
+                dist[i] = best;
+            }
+        }
+        for (int y = y1; y >= y0; y--) {
+            for (int x = x1; x >= x0; x--) {
+                int i = y * w + x, best = dist[i];
+                if (x < x1 && dist[i + 1] != INF) best = Math.min(best, dist[i + 1] + 1);
+                if (y < y1 && dist[i + w] != INF) best = Math.min(best, dist[i + w] + 1);
+                dist[i] = best;
+            }
+        }
+    }
+
+    /**
+     * If the (materialized) tile t is uniform within the map, store it as a single value.
+     */
+    private void compact(int t)
+    {
+        int[] tile = tiles[t];
+        if (tile == null) return;
+        int x0 = (t % tilesX) << SHIFT, y0 = (t / tilesX) << SHIFT;
+        int tw = Math.min(w - x0, TILE), th = Math.min(h - y0, TILE);
+        int v = tile[0];
+        for (int y = 0; y < th; y++)
+        {
+            for (int x = 0; x < tw; x++)
+            {
+                if (tile[(y << SHIFT) | x] != v) return;
+            }
+        }
+        tiles[t] = null;
+        uniform[t] = v;
+    }
+
+    private long tileArea(int t)
+    {
+        int x0 = (t % tilesX) << SHIFT, y0 = (t / tilesX) << SHIFT;
+        return (long) Math.min(w - x0, TILE) * Math.min(h - y0, TILE);
+    }
+
+    /**
+     * @return the number of (distinct) pixels on the border of the rectangle [x0,x1]*[y0,y1].
+     */
+    private static int borderLength(int x0, int y0, int x1, int y1)
+    {
+        int tw = x1 - x0 + 1, th = y1 - y0 + 1;
+        if (tw == 1 || th == 1) return tw * th;
+        return 2 * (tw + th) - 4;
+    }
+
+    /**
+     * @return the index (y*w+x) of the b-th border pixel of the rectangle [x0,x1]*[y0,y1]:
+     * the top row, then the bottom row, then the left and right columns (without the corners).
+     */
+    private int borderPixel(int x0, int y0, int x1, int y1, int b)
+    {
+        int tw = x1 - x0 + 1, th = y1 - y0 + 1;
+        if (th == 1) return y0 * w + x0 + b;
+        if (tw == 1) return (y0 + b) * w + x0;
+        if (b < tw) return y0 * w + x0 + b;
+        b -= tw;
+        if (b < tw) return y1 * w + x0 + b;
+        b -= tw;
+        if (b < th - 2) return (y0 + 1 + b) * w + x0;
+        b -= th - 2;
+        return (y0 + 1 + b) * w + x1;
+    }
+
+    /**
+     * A growable list of ints (a bucket of the Dial queue).
+     */
+    private static final class IntList {
+        int[] data = new int[16];
+        int size;
+
+        void add(int a)
+        {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = a;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * Weighted shortest paths over a flat row-major int[] map of w*h pixels (see Map.shortestPathWeighted and
+ * Map.allDistanceWeighted): instead of "obstacle or not", stepping onto a pixel of value c costs costs[c]
+ * (e.g. 1 for a road, 3 for mud, 10 for water), and a pixel whose value is outside the table or whose cost
+ * is negative can not be stepped on. The start's own cost is not paid.
+ * The costs are small integers, so the priority queue is Dial's bucket queue: C+1 buckets (C the largest
+ * cost) used as a ring - every queued distance is within [d, d+C] of the smallest one d, so bucket d mod (C+1)
+ * holds exactly the pixels of distance d. A pixel is queued again when a cheaper way to it is found, and the
+ * stale entries are skipped. Pushing and popping are O(1), and a bitmap of the non-empty buckets skips the empty
+ * ones 64 at a time, so a search costs about as much as a BFS plus the number of buckets it walks through / 64.
+ * https://en.wikipedia.org/wiki/Dijkstra%27s_algorithm#Specialized_variants
+ */
+public final class WeightedPaths {
+
+    public static final int MAX_COST = 1 << 16; // the largest cost of a table (the number of buckets)
+
+    private WeightedPaths() {} // static methods only
+
+    /**
+     * Cheapest path (8-connectivity) from p1 to p2: the sum of the costs of its pixels after p1 is minimal.
+     * @param costs the cost of stepping onto a pixel, by pixel value (see the class comment).
+     * @return the path from p1 to p2 (inclusive), or null if there is none.
+     */
+    public static Pixel2D[] shortestPath(int[] v, int w, int h, Pixel2D p1, Pixel2D p2, int[] costs, boolean cyclic)
+    {
+        final int buckets = maxCost(costs) + 1;
+        if (p1 == null || p2 == null) return null;
+        final int sx = p1.getX(), sy = p1.getY(), ex = p2.getX(), ey = p2.getY();
+        if (sx < 0 || sx >= w || sy < 0 || sy >= h) return null;
+        if (ex < 0 || ex >= w || ey < 0 || ey >= h) return null;
+        final int start = sy * w + sx, goal = ey * w + ex;
+        if (cost(v[start], costs) < 0 || cost(v[goal], costs) < 0) return null;
+        if (start == goal) return new Pixel2D[]{p1};
+
+        BfsWorkspace ws = BfsWorkspace.get();
+        return search(ws, v, w, h, start, goal, costs, buckets, 8, cyclic) ? GridBfs.buildPath(ws.parent, start, goal, w) : null;
+    }
+
+    /**
+     * Cheapest distance map (4-connectivity) from (sx,sy): the cost of the cheapest path to every pixel,
+     * -1 for the pixels which can not be stepped on or reached.
+     * @param costs the cost of stepping onto a pixel, by pixel value (see the class comment).
+     * @return a new w*h (row-major) distance array.
+     */
+    public static int[] distances(int[] v, int w, int h, int sx, int sy, int[] costs, boolean cyclic)
+    {
+        final int buckets = maxCost(costs) + 1;
+        final int[] dist = new int[w * h];
+        java.util.Arrays.fill(dist, -1);
+        if (sx < 0 || sx >= w || sy < 0 || sy >= h || cost(v[sy * w + sx], costs) < 0) return dist;
+        BfsWorkspace ws = BfsWorkspace.get();
+        search(ws, v, w, h, sy * w + sx, -1, costs, buckets, 4, cyclic);
+        for (int i = 0; i < dist.length; i++)
+        {
+            if (ws.visited(i)) dist[i] = ws.cost[i];
+        }
+        return dist;
+    }
+
+    /**
+     * Dijkstra with a bucket queue from start, until goal is settled (or every reachable pixel is).
+     * The visited pixels have a distance in ws.cost, final once they are taken out of the queue: no cost is
+     * negative, so a settled pixel is never improved again, and needs no mark of its own.
+     * @param goal the pixel to stop at, or -1 to settle every pixel.
+     * @param dirs the connectivity: 4 or 8 (the first dirs moves of GridBfs.DX/DY).
+     * @return true iff goal was reached.
+     * @throws IllegalArgumentException if goal (or, without a goal, a reachable pixel) is farther than
+     * Integer.MAX_VALUE - the distances are ints.
+     */
+    private static boolean search(BfsWorkspace ws, int[] v, int w, int h, int start, int goal, int[] costs, int buckets, int dirs, boolean cyclic)
+    {
+        ws.begin(w * h);
+        ws.bucketsFor(buckets);
+        final int[] parent = goal >= 0 ? ws.parent : null, cost = ws.cost; // no path, no parents
+        final int[] size = ws.bucketSize; // the number of entries in each bucket, 0 on entry and cleared on exit
+        final long[] used = ws.bucketUsed; // the non-empty buckets, the same
+        ws.visit(start);
+        cost[start] = 0;
+        if (ws.buckets[0].length == 0) ws.growBucket(0, 0);
+        ws.buckets[0][size[0]++] = start;
+        used[0] |= 1;
+        int pending = 1, last = 0; // last: the largest distance queued
+        boolean beyond = false; // a pixel was left out as farther than Integer.MAX_VALUE
+        for (int d = 0, b = 0; pending > 0; ) // d: the distance of the pixels in the current bucket b
+        {
+            for (int head = 0; head < size[b]; head++) // in FIFO order; a step of cost 0 appends to this bucket
+            {
+                int cur = ws.buckets[b][head];
+                pending--;
+                if (cost[cur] != d) continue; // stale: it was reached cheaper since
+                if (cur == goal)
+                {
+                    for (int k = 0; k <= last - d; k++) // empty the buckets still in use (at most all of them)
+                    {
+                        int e = (d + k) % buckets;
+                        size[e] = 0;
+                        used[e >>> 6] &= ~(1L << e);
+                    }
+                    return true;
+                }
+                int x = cur % w, y = cur / w;
+                for (int k = 0; k < dirs; k++) {
+                    int ni = GridBfs.neighbor(x, y, GridBfs.DX[k], GridBfs.DY[k], w, h, cyclic);
+                    if (ni < 0) continue;
+                    int step = cost(v[ni], costs);
+                    if (step < 0) continue;
+                    long far = (long) d + step;
+                    if (far > Integer.MAX_VALUE)
+                    {
+                        beyond = true; // too expensive to store: the cheaper pixels are still exact
+                        continue;
+                    }
+                    int g = (int) far;
+                    if (ws.visited(ni) && cost[ni] <= g) continue;
+                    ws.visit(ni);
+                    cost[ni] = g;
+                    if (g > last) last = g;
+                    if (parent != null) parent[ni] = cur;
+                    int nb = b + step; // (g mod buckets), as step < buckets
+                    if (nb >= buckets) nb -= buckets;
+                    if (size[nb] == 0) used[nb >>> 6] |= 1L << nb;
+                    if (size[nb] == ws.buckets[nb].length) ws.growBucket(nb, size[nb]);
+                    ws.buckets[nb][size[nb]++] = ni;
+                    pending++;
+                }
+            }
+            size[b] = 0;
+            used[b >>> 6] &= ~(1L << b);
+            if (pending == 0) break;
+            int nb = nextUsed(used, b, buckets); // every queued distance is within [d, d+C]: the next one is there
+            d += nb > b ? nb - b : nb + buckets - b;
+            b = nb;
+        }
+        if (beyond)
+        {
+            throw new IllegalArgumentException("the costs add up to more than " + Integer.MAX_VALUE);
+        }
+        return false;
+    }
+
+    /**
+     * @return the first non-empty bucket after bucket b, going around the ring of buckets (there has to be one).
+     */
+    private static int nextUsed(long[] used, int b, int buckets)
+    {
+        int k = b + 1 == buckets ? 0 : b + 1;
+        long word = used[k >>> 6] & -1L << k; // the buckets from k on, in the word of k
+        while (word == 0) {
+            k = (k >>> 6) + 1 << 6;
+            if (k >= buckets) k = 0;
+            word = used[k >>> 6];
+        }
+        return (k >>> 6 << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * @return the cost of stepping onto a pixel of value c, negative if it can not be stepped on.
+     */
+    private static int cost(int c, int[] costs)
+    {
+        return c >= 0 && c < costs.length ? costs[c] : -1;
+    }
+
+    /**
+     * @return the largest cost of the table (0 if none of its pixels can be stepped on).
+     */
+    private static int maxCost(int[] costs)
+    {
+        if (costs == null)
+        {
+            throw new IllegalArgumentException("costs can't be null");
+        }
+        int max = 0;
+        for (int c : costs)
+        {
+            if (c > MAX_COST)
+            {
+                throw new IllegalArgumentException("cost " + c + " is larger than " + MAX_COST);
+            }
+            max = Math.max(max, c);
+        }
+        return max;
+    }
+}